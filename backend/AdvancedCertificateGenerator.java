@@ -1,44 +1,304 @@
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import cache.BloomFilter;
+import cache.Cache;
+import cache.OffHeapMetadataStore;
+import cache.SegmentedLruCache;
+import http.EntityTags;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 import org.json.JSONObject;
+import qr.QRCodeRenderer;
+import render.PdfCertificateTemplate;
+import render.PdfEncodedImage;
+import render.PdfQRCode;
+import render.PngCertificateTemplate;
+import render.RenderAssets;
+import render.RenderExecutor;
+import signing.CertificateToken;
+import signing.TokenKeyRing;
+import storage.CompactId;
+import storage.GroupCommitWriter;
+import storage.RecordType;
+import storage.SegmentStore;
+import storage.ValueRegion;
+import storage.WriteBatch;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AdvancedCertificateGenerator {
     private static final Logger logger = Logger.getLogger(AdvancedCertificateGenerator.class.getName());
-    private static final String CERTIFICATES_DIR = "certificates/";
-    private static final Map<String, CertificateMetadata> certificateCache = new ConcurrentHashMap<>();
+    private static final String CERTIFICATES_DIR = ServerConfig.getString("CERTIAI_CERTIFICATES_DIR", "certificates") + "/";
+    private static final String STORE_DIR = CERTIFICATES_DIR + "store";
+    private static final String VERIFICATION_URL_PREFIX = "https://yourdomain.com/api/certificates/";
+    private static final String VERIFICATION_URL_SUFFIX = "/verify";
+    // Metadata outside the heap, compactly encoded; the heap keeps only its index
+    private static final OffHeapMetadataStore metadataStore = new OffHeapMetadataStore(
+            ServerConfig.getLong("CERTIAI_METADATA_OFFHEAP_BYTES", 256L * 1024 * 1024),
+            ServerConfig.getInt("CERTIAI_METADATA_SLAB_BYTES", 4 * 1024 * 1024),
+            VERIFICATION_URL_PREFIX, VERIFICATION_URL_SUFFIX);
+    // Optional second tier for rendered PDF/PNG bytes, disabled when its budget is 0
+    private static final Cache<String, byte[]> artifactCache = createArtifactCache(
+            ServerConfig.getLong("CERTIAI_ARTIFACT_CACHE_BYTES", 0));
+    private static final Map<String, CompletableFuture<byte[]>> pendingRenders = new ConcurrentHashMap<>();
+    // Bulkhead for CPU-bound rendering, sized to the cores and separate from request threads
+    private static final RenderExecutor renderExecutor = new RenderExecutor(
+            ServerConfig.getInt("CERTIAI_RENDER_THREADS", Runtime.getRuntime().availableProcessors()),
+            ServerConfig.getInt("CERTIAI_RENDER_QUEUE_CAPACITY", 16 * Runtime.getRuntime().availableProcessors()));
+    private static final boolean LAZY_RENDERING = "lazy".equalsIgnoreCase(ServerConfig.getString("CERTIAI_RENDER_MODE", "eager"));
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final int QR_CODE_SIZE = 300;
+    private static final int QR_LOGO_SIZE = QR_CODE_SIZE / 5;
+    private static final QRCodeRenderer QR_CODE_RENDERER =
+            new QRCodeRenderer(QR_CODE_SIZE, QR_CODE_SIZE, 1, BufferedImage.TYPE_BYTE_BINARY);
+    
+    // "durable" waits for the group commit before responding, "ack" only for it to be queued
+    private static final boolean WAIT_FOR_DURABILITY =
+            !"ack".equalsIgnoreCase(ServerConfig.getString("CERTIAI_DURABILITY_MODE", "durable"));
+    
+    // Stage timings; PDF and PNG include the QR encode when it has not happened yet
+    private static final LatencyHistogram QR_ENCODE_TIME = stageHistogram("qr_encode");
+    private static final LatencyHistogram PDF_BUILD_TIME = stageHistogram("pdf_build");
+    private static final LatencyHistogram PNG_ENCODE_TIME = stageHistogram("png_encode");
+    private static final LatencyHistogram PERSIST_TIME = stageHistogram("persist_write");
+    private static final LatencyHistogram DISK_LOAD_TIME = stageHistogram("disk_load");
+    
+    // Bloom filter over issued IDs; a definite miss is answered without a disk probe. 0 disables it.
+    private static final double ID_FILTER_FPP = ServerConfig.getDouble("CERTIAI_ID_FILTER_FPP", 0.01);
+    private static final long ID_FILTER_EXPECTED_IDS = ServerConfig.getLong("CERTIAI_ID_FILTER_EXPECTED_IDS", 1_000_000);
+    private static final String ID_FILTER_SNAPSHOT = "id-filter.snapshot";
+    private static final LongAdder ID_FILTER_AVOIDED_PROBES = MetricsRegistry.shared().counter(
+            "certiai_id_filter_avoided_probes_total", "Lookups of unknown IDs answered by the ID filter without touching disk");
+    private static final LongAdder ID_FILTER_FALSE_POSITIVES = MetricsRegistry.shared().counter(
+            "certiai_id_filter_false_positives_total", "Lookups the ID filter let through that found nothing on disk");
+    
+    // Signed QR mode: the verification URL carries the signed claims, checked against a public key alone
+    private static final boolean SIGNED_QR = ServerConfig.getBoolean("CERTIAI_SIGNED_QR", false);
+    private static final String TOKEN_URL_PREFIX = "https://yourdomain.com/api/verify/token/";
+    private static final LatencyHistogram TOKEN_SIGN_TIME = stageHistogram("token_sign");
+    
+    private static final SegmentStore store;
+    private static final GroupCommitWriter writer;
+    private static final BloomFilter idFilter;
+    // Opened on every node, so one that never signs can still verify
+    private static final TokenKeyRing tokenKeys;
     
     static {
         initializeCertificateDirectory();
+        store = openStore();
+        idFilter = openIdFilter();
+        tokenKeys = openTokenKeys();
+        writer = new GroupCommitWriter(store,
+                ServerConfig.getInt("CERTIAI_GROUP_COMMIT_MAX_RECORDS", 512),
+                ServerConfig.getLong("CERTIAI_GROUP_COMMIT_MAX_DELAY_MS", 5),
+                ServerConfig.getInt("CERTIAI_GROUP_COMMIT_QUEUE_CAPACITY", 4096));
+        writer.onCommit(PERSIST_TIME::record);
+        registerMetrics();
+        // Closing marks the offset index clean, so the next start skips the rebuild scan
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                writer.close();
+                saveIdFilter();
+                store.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close certificate store", e);
+            }
+        }, "certificate-store-shutdown"));
+    }
+    
+    /**
+     * Resolves the logo, fonts and page templates so the first certificates do not
+     * pay for resource loading.
+     */
+    public static void warmUp() {
+        RenderAssets.shared().warm(QR_LOGO_SIZE);
+        logger.info("Render assets ready: " + PdfCertificateTemplate.CLASSIC.getMediaBox() 
+                + ", " + PngCertificateTemplate.CLASSIC.getWidth() + "x" + PngCertificateTemplate.CLASSIC.getHeight());
+    }
+    
+    private static Cache<String, byte[]> createArtifactCache(long maximumBytes) {
+        if (maximumBytes <= 0) {
+            return null;
+        }
+        return new SegmentedLruCache<>(maximumBytes, (key, content) -> 64L + key.length() + content.length);
+    }
+    
+    private static LatencyHistogram stageHistogram(String stage) {
+        return MetricsRegistry.shared().histogram("certiai_render_stage_duration_seconds",
+                "Time spent in each certificate rendering and storage stage", "stage", stage);
+    }
+    
+    private static void registerMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        metrics.gauge("certiai_cache_hit_ratio", "Hit ratio of each cache since startup",
+                () -> metadataStore.stats().getHitRatio(), "cache", "generator_metadata");
+        metrics.gauge("certiai_metadata_offheap_bytes", "Bytes of certificate metadata held outside the heap",
+                () -> metadataStore.stats().getWeightedSize());
+        if (artifactCache != null) {
+            metrics.gauge("certiai_cache_hit_ratio", "Hit ratio of each cache since startup",
+                    () -> artifactCache.stats().getHitRatio(), "cache", "generator_artifacts");
+        }
+        metrics.gauge("certiai_executor_queue_depth", "Tasks waiting in each executor queue",
+                renderExecutor::getQueueDepth, "executor", "render");
+        if (idFilter != null) {
+            metrics.gauge("certiai_id_filter_expected_false_positive_ratio",
+                    "False-positive rate of the ID filter at its current fill", idFilter::expectedFalsePositiveRate);
+        }
+        metrics.gauge("certiai_active_renders", "Renders currently running on the render pool",
+                renderExecutor::getActiveCount);
+    }
+    
+    private static SegmentStore openStore() {
+        try {
+            return SegmentStore.open(Paths.get(STORE_DIR),
+                    ServerConfig.getLong("CERTIAI_SEGMENT_BYTES", 128L * 1024 * 1024),
+                    Duration.ofMinutes(ServerConfig.getLong("CERTIAI_COMPACTION_INTERVAL_MINUTES", 10)));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to open certificate store", e);
+            throw new RuntimeException("Certificate store initialization failed", e);
+        }
+    }
+    
+    /**
+     * Loads the ID filter snapshot and catches up with the records appended since
+     * it was taken, or builds the filter from the whole store when there is no
+     * usable snapshot. Legacy JSON metadata is always added, since the fallback
+     * lookup still finds it.
+     */
+    private static BloomFilter openIdFilter() {
+        if (ID_FILTER_FPP <= 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            BloomFilter filter = null;
+            long from = 0;
+            Path snapshot = Paths.get(STORE_DIR, ID_FILTER_SNAPSHOT);
+            if (Files.exists(snapshot)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                    long position = in.readLong();
+                    double fpp = in.readDouble();
+                    BloomFilter loaded = BloomFilter.readFrom(in);
+                    // A snapshot for other settings, or one that has filled up, is rebuilt at the right size
+                    if (fpp == ID_FILTER_FPP && loaded.expectedKeyCount() >= ID_FILTER_EXPECTED_IDS
+                            && loaded.approximateKeyCount() < loaded.expectedKeyCount()) {
+                        filter = loaded;
+                        from = position;
+                    }
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Ignoring unreadable ID filter snapshot " + snapshot, e);
+                }
+            }
+            if (filter == null) {
+                // The record count covers artifacts too, so this leaves headroom for growth
+                filter = BloomFilter.create(Math.max(ID_FILTER_EXPECTED_IDS, store.recordCount()), ID_FILTER_FPP);
+            }
+            
+            store.scanKeys(RecordType.METADATA, from, filter::put);
+            try (DirectoryStream<Path> legacy = Files.newDirectoryStream(Paths.get(CERTIFICATES_DIR), "*.json")) {
+                for (Path path : legacy) {
+                    String name = path.getFileName().toString();
+                    filter.put(name.substring(0, name.length() - ".json".length()));
+                }
+            }
+            logger.info(String.format("ID filter ready in %d ms: ~%d IDs, %d bits, %d hashes, %s snapshot",
+                    (System.nanoTime() - start) / 1_000_000, filter.approximateKeyCount(), filter.bitSize(),
+                    filter.hashCount(), from > 0 ? "caught up from" : "rebuilt without"));
+            writeIdFilterSnapshot(filter);
+            return filter;
+        } catch (IOException e) {
+            // Without a complete filter every lookup has to go to disk
+            logger.log(Level.WARNING, "Failed to build ID filter, lookups of unknown IDs will probe disk", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Loads the token signing keys. Every node opens them, so one that never signs
+     * can still verify tokens; a failure only disables signed QR codes.
+     */
+    private static TokenKeyRing openTokenKeys() {
+        Path directory = Paths.get(ServerConfig.getString("CERTIAI_TOKEN_KEY_DIR", CERTIFICATES_DIR + "keys"));
+        try {
+            TokenKeyRing keys = TokenKeyRing.open(directory,
+                    ServerConfig.getString("CERTIAI_TOKEN_ALGORITHM", "Ed25519"),
+                    Duration.ofDays(ServerConfig.getLong("CERTIAI_TOKEN_KEY_ROTATION_DAYS", 90)));
+            logger.info("Token keys loaded from " + directory + ": " + keys.getKeys().size()
+                    + " keys, signing " + (SIGNED_QR ? "enabled" : "disabled"));
+            return keys;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Failed to open token keys in " + directory + ", signed QR codes are unavailable", e);
+            return null;
+        }
+    }
+    
+    private static void saveIdFilter() {
+        if (idFilter == null) {
+            return;
+        }
+        try {
+            writeIdFilterSnapshot(idFilter);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save ID filter snapshot", e);
+        }
+    }
+    
+    private static void writeIdFilterSnapshot(BloomFilter filter) throws IOException {
+        // IDs are added before their records are appended, so everything before this position is in the filter
+        long position = store.endPosition();
+        Path snapshot = Paths.get(STORE_DIR, ID_FILTER_SNAPSHOT);
+        Path temporary = Paths.get(STORE_DIR, ID_FILTER_SNAPSHOT + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeLong(position);
+            out.writeDouble(ID_FILTER_FPP);
+            filter.writeTo(out);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    // False only for IDs that were definitely never issued
+    private static boolean mightExist(String certificateId) {
+        if (idFilter == null || idFilter.mightContain(certificateId)) {
+            return true;
+        }
+        ID_FILTER_AVOIDED_PROBES.increment();
+        return false;
     }
     
     private static void initializeCertificateDirectory() {
@@ -59,43 +319,33 @@ public class AdvancedCertificateGenerator {
         try {
             validateCertificateRequest(request);
             
-            String certificateId = UUID.randomUUID().toString();
-            LocalDate issueDate = LocalDate.now();
+            CertificateMetadata metadata = createCertificateMetadata(request);
             
-            // Generate QR code
-            String verificationUrl = buildVerificationUrl(certificateId);
-            byte[] qrCodeImage = generateQRCodeImage(verificationUrl);
-            String qrCodeBase64 = Base64.getEncoder().encodeToString(qrCodeImage);
-            
-            // Create certificate metadata
-            CertificateMetadata metadata = new CertificateMetadata(
-                    certificateId,
-                    request.getParticipantName(),
-                    request.getCourseName(),
-                    request.getCompletionDate(),
-                    request.getIssuerName(),
-                    issueDate,
-                    verificationUrl,
-                    qrCodeBase64
-            );
-            
-            // Generate certificate files
-            byte[] pdfContent = generatePdfCertificate(metadata);
-            byte[] pngContent = generatePngCertificate(metadata);
-            
-            // Save all artifacts
-            saveCertificateArtifacts(metadata, pdfContent, pngContent);
-            
-            // Cache the metadata
-            certificateCache.put(certificateId, metadata);
+            CertificateGenerationResult result;
+            if (LAZY_RENDERING) {
+                // Files are rendered on first download
+                result = persistCertificate(metadata, null, null);
+            } else {
+                // Generate certificate files in parallel on the render pool
+                Future<byte[]> pdfRender = renderExecutor.submit(() -> generatePdfCertificate(metadata));
+                Future<byte[]> pngRender;
+                try {
+                    pngRender = renderExecutor.submit(() -> generatePngCertificate(metadata));
+                } catch (RenderExecutor.RenderRejectedException e) {
+                    pdfRender.cancel(false);
+                    throw e;
+                }
+                byte[] pdfContent = RenderExecutor.await(pdfRender);
+                byte[] pngContent = RenderExecutor.await(pngRender);
+                
+                // Save and cache all artifacts
+                result = persistCertificate(metadata, pdfContent, pngContent);
+            }
             
-            return new CertificateGenerationResult(
-                    certificateId,
-                    metadata.getVerificationUrl(),
-                    getDownloadUrl(certificateId, "pdf"),
-                    getDownloadUrl(certificateId, "png"),
-                    issueDate
-            );
+            if (WAIT_FOR_DURABILITY) {
+                awaitDurability(result);
+            }
+            return result;
             
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Certificate generation failed", e);
@@ -103,39 +353,366 @@ public class AdvancedCertificateGenerator {
         }
     }
     
+    static CertificateMetadata createCertificateMetadata(CertificateRequest request) throws IOException {
+        String certificateId = CompactId.next();
+        LocalDate issueDate = LocalDate.now();
+        String verificationUrl = SIGNED_QR ? buildSignedVerificationUrl(certificateId, request, issueDate)
+                : buildVerificationUrl(certificateId);
+        
+        return new CertificateMetadata(
+                certificateId,
+                request.getParticipantName(),
+                request.getCourseName(),
+                request.getCompletionDate(),
+                request.getIssuerName(),
+                issueDate,
+                verificationUrl
+        );
+    }
+    
+    static boolean isSigningTokens() {
+        return SIGNED_QR;
+    }
+    
+    /**
+     * Checks a signed QR token against the signing keys alone; storage is never read,
+     * so revocations are not reflected.
+     */
+    public static CertificateToken verifyToken(String token) throws CertificateToken.InvalidTokenException {
+        if (tokenKeys == null) {
+            throw new CertificateToken.InvalidTokenException("No token keys are available");
+        }
+        return tokenKeys.verify(token);
+    }
+    
+    /**
+     * Public halves of all token keys, for verifiers that check tokens offline.
+     */
+    public static List<TokenKeyRing.TokenKey> getTokenKeys() {
+        return tokenKeys == null ? List.of() : tokenKeys.getKeys();
+    }
+    
+    public static int getActiveTokenKeyId() {
+        return tokenKeys == null ? -1 : tokenKeys.getActiveKeyId();
+    }
+    
+    static boolean isLazyRendering() {
+        return LAZY_RENDERING;
+    }
+    
+    static boolean isWaitingForDurability() {
+        return WAIT_FOR_DURABILITY;
+    }
+    
+    /**
+     * Queues the certificate for the next group commit and caches its metadata.
+     * The records are readable right away; the result's durability future completes
+     * once they have been fsynced.
+     */
+    static CertificateGenerationResult persistCertificate(CertificateMetadata metadata, byte[] pdfContent, byte[] pngContent) 
+            throws IOException {
+        metadata.assignEtags(pdfContent, pngContent);
+        
+        // Before the records exist, so a lookup can never see them but miss in the filter
+        if (idFilter != null) {
+            idFilter.put(metadata.getCertificateId());
+        }
+        
+        // Save all artifacts
+        CompletableFuture<Void> durability = saveCertificateArtifacts(metadata, pdfContent, pngContent);
+        
+        // Cache the metadata
+        cacheMetadata(metadata);
+        
+        return new CertificateGenerationResult(
+                metadata.getCertificateId(),
+                metadata.getVerificationUrl(),
+                getDownloadUrl(metadata.getCertificateId(), "pdf"),
+                getDownloadUrl(metadata.getCertificateId(), "png"),
+                metadata.getIssueDate(),
+                durability
+        );
+    }
+    
+    private static void awaitDurability(CertificateGenerationResult result) throws IOException {
+        try {
+            result.getDurability().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for certificate to be persisted");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to persist certificate " + result.getCertificateId(), e.getCause());
+        }
+    }
+    
     public static CertificateMetadata getCertificateMetadata(String certificateId) throws CertificateNotFoundException {
-        CertificateMetadata metadata = certificateCache.get(certificateId);
+        OffHeapMetadataStore.View view = metadataStore.get(certificateId);
+        if (view != null) {
+            return CertificateMetadata.of(view);
+        }
+        CertificateMetadata metadata = mightExist(certificateId) ? loadCertificateFromDisk(certificateId) : null;
         if (metadata == null) {
-            metadata = loadCertificateFromDisk(certificateId);
-            if (metadata != null) {
-                certificateCache.put(certificateId, metadata);
-            } else {
-                throw new CertificateNotFoundException("Certificate not found: " + certificateId);
-            }
+            throw new CertificateNotFoundException("Certificate not found: " + certificateId);
         }
+        cacheMetadata(metadata);
         return metadata;
     }
     
+    /**
+     * Looks up a certificate for verification as a view over its cached record,
+     * without building the metadata object; a miss is loaded and cached first.
+     */
+    public static OffHeapMetadataStore.View getCertificateView(String certificateId)
+            throws CertificateNotFoundException {
+        OffHeapMetadataStore.View view = metadataStore.get(certificateId);
+        if (view != null) {
+            return view;
+        }
+        CertificateMetadata metadata = mightExist(certificateId) ? loadCertificateFromDisk(certificateId) : null;
+        if (metadata == null) {
+            throw new CertificateNotFoundException("Certificate not found: " + certificateId);
+        }
+        return cacheMetadata(metadata);
+    }
+    
+    /**
+     * Looks up many certificates at once, keyed by ID; unknown IDs are left out.
+     * Cached certificates are answered from memory and the rest are read from the
+     * store in a single pass grouped by segment, then cached.
+     */
+    public static Map<String, CertificateMetadata> getCertificateMetadata(Collection<String> certificateIds)
+            throws IOException {
+        Map<String, CertificateMetadata> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String certificateId : certificateIds) {
+            OffHeapMetadataStore.View view = metadataStore.get(certificateId);
+            if (view != null) {
+                found.put(certificateId, CertificateMetadata.of(view));
+            } else if (mightExist(certificateId)) {
+                misses.add(certificateId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<String, CertificateMetadata> loaded = loadCertificatesFromDisk(misses);
+            loaded.values().forEach(AdvancedCertificateGenerator::cacheMetadata);
+            found.putAll(loaded);
+        }
+        return found;
+    }
+    
     public static byte[] getCertificateFile(String certificateId, String format) 
             throws CertificateNotFoundException, IOException {
+        String extension = normalizeFormat(format);
         CertificateMetadata metadata = getCertificateMetadata(certificateId);
-        Path filePath = Paths.get(CERTIFICATES_DIR, certificateId + "." + format.toLowerCase());
+        String artifactKey = certificateId + "." + extension;
+        if (artifactCache != null) {
+            byte[] cached = artifactCache.get(artifactKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
         
-        if (!Files.exists(filePath)) {
-            // Regenerate if file is missing but metadata exists
-            if (format.equalsIgnoreCase("pdf")) {
-                return generatePdfCertificate(metadata);
-            } else if (format.equalsIgnoreCase("png")) {
-                return generatePngCertificate(metadata);
-            } else {
-                throw new IllegalArgumentException("Unsupported format: " + format);
+        byte[] content = readArtifact(certificateId, extension);
+        if (content == null) {
+            // Render if the artifact is missing (lazy mode or lost) but metadata exists
+            content = renderOnce(metadata, extension);
+        }
+        
+        if (artifactCache != null) {
+            artifactCache.put(artifactKey, content);
+        }
+        return content;
+    }
+    
+    /**
+     * Opens an artifact for streaming to a client. Stored artifacts are transferred
+     * straight from their segment or legacy file rather than read into a byte array;
+     * only cached, unflushed or freshly rendered ones are already on the heap.
+     * The caller must close the region.
+     */
+    public static ValueRegion openCertificateFile(String certificateId, String format) 
+            throws CertificateNotFoundException, IOException {
+        String extension = normalizeFormat(format);
+        CertificateMetadata metadata = getCertificateMetadata(certificateId);
+        if (artifactCache != null) {
+            byte[] cached = artifactCache.get(certificateId + "." + extension);
+            if (cached != null) {
+                return ValueRegion.of(cached);
+            }
+        }
+        
+        ValueRegion region = writer.openRegion(certificateId, RecordType.forFormat(extension));
+        if (region == null) {
+            Path legacyPath = legacyPath(certificateId, extension);
+            region = legacyPath != null && Files.exists(legacyPath) 
+                    ? ValueRegion.ofFile(legacyPath) 
+                    : ValueRegion.of(renderOnce(metadata, extension));
+        }
+        return region;
+    }
+    
+    /**
+     * Entity tag of an artifact: the digest of its stored bytes. It comes from the
+     * metadata alone, so a conditional request is answered without touching the
+     * artifact, except for one that has no tag yet (not rendered in lazy mode, or
+     * issued before tags were stored); that one is read or rendered and tagged first.
+     */
+    public static String getCertificateEtag(String certificateId, String format) 
+            throws CertificateNotFoundException, IOException {
+        String extension = normalizeFormat(format);
+        CertificateMetadata metadata = getCertificateMetadata(certificateId);
+        String etag = metadata.getEtag(extension);
+        if (etag == null) {
+            byte[] content = readArtifact(certificateId, extension);
+            if (content == null) {
+                content = renderOnce(metadata, extension);
+            }
+            etag = EntityTags.of(content);
+            metadata.setEtag(extension, etag);
+            cacheMetadata(metadata);
+        }
+        return etag;
+    }
+    
+    private static String normalizeFormat(String format) {
+        String extension = format.toLowerCase();
+        if (!extension.equals("pdf") && !extension.equals("png")) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        return extension;
+    }
+    
+    // Reads from the segment store, falling back to files from before the store existed
+    private static byte[] readArtifact(String certificateId, String format) throws IOException {
+        byte[] content = writer.get(certificateId, RecordType.forFormat(format));
+        if (content == null) {
+            Path legacyPath = legacyPath(certificateId, format);
+            if (legacyPath != null && Files.exists(legacyPath)) {
+                content = Files.readAllBytes(legacyPath);
             }
         }
+        return content;
+    }
+    
+    public static Map<String, Object> getStorageStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(store.getStats());
+        stats.put("groupCommit", writer.getStats());
+        if (idFilter != null) {
+            Map<String, Object> filter = new LinkedHashMap<>();
+            filter.put("approximateIds", idFilter.approximateKeyCount());
+            filter.put("bits", idFilter.bitSize());
+            filter.put("hashes", idFilter.hashCount());
+            filter.put("expectedFalsePositiveRate", idFilter.expectedFalsePositiveRate());
+            filter.put("avoidedProbes", ID_FILTER_AVOIDED_PROBES.sum());
+            filter.put("falsePositives", ID_FILTER_FALSE_POSITIVES.sum());
+            stats.put("idFilter", filter);
+        }
+        return stats;
+    }
+    
+    public static int getRenderQueueDepth() {
+        return renderExecutor.getQueueDepth();
+    }
+    
+    public static Map<String, Object> getRenderStats() {
+        return renderExecutor.getStats();
+    }
+    
+    /**
+     * Counters of the metadata cache and, when enabled, the rendered artifact cache.
+     */
+    public static Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("metadata", metadataStore.getStats());
+        if (artifactCache != null) {
+            stats.put("artifacts", artifactCache.stats().toMap());
+        }
+        return stats;
+    }
+    
+    /**
+     * Renders an artifact and writes it through to disk, collapsing concurrent
+     * requests for the same certificate and format into a single render.
+     */
+    private static byte[] renderOnce(CertificateMetadata metadata, String format) throws IOException {
+        String key = metadata.getCertificateId() + "." + format;
+        CompletableFuture<byte[]> render = new CompletableFuture<>();
+        CompletableFuture<byte[]> inFlight = pendingRenders.putIfAbsent(key, render);
+        if (inFlight != null) {
+            return awaitRender(inFlight);
+        }
         
-        return Files.readAllBytes(filePath);
+        try {
+            // A previous leader may have finished between our lookup and now
+            byte[] content = readArtifact(metadata.getCertificateId(), format);
+            if (content == null) {
+                content = renderAndStore(metadata, format);
+            }
+            render.complete(content);
+            return content;
+        } catch (IOException | RuntimeException e) {
+            render.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingRenders.remove(key, render);
+        }
+    }
+    
+    private static byte[] renderAndStore(CertificateMetadata metadata, String format) throws IOException {
+        byte[] content = renderExecutor.call(() -> format.equals("pdf") 
+                ? generatePdfCertificate(metadata) 
+                : generatePngCertificate(metadata));
+        // Every render differs (PDFBox writes a fresh document ID), so the tag is of these bytes.
+        // The artifact goes first: a torn tail can lose the tag but never keep it without them.
+        metadata.setEtag(format, EntityTags.of(content));
+        // Readable from the writer right away; no need to wait for the fsync
+        writer.submit(new WriteBatch()
+                .put(metadata.getCertificateId(), RecordType.forFormat(format), content)
+                .put(metadata.getCertificateId(), RecordType.METADATA, metadataRecord(metadata)));
+        cacheMetadata(metadata);
+        logger.info("Rendered " + format + " on demand for certificate: " + metadata.getCertificateId());
+        return content;
+    }
+    
+    /**
+     * Renders an artifact on the shared render pool for the batch pipeline. A full
+     * render queue is waited out instead of reported, since a batch item has no
+     * client to answer 503 to; the pipeline bounds how many of these are in flight.
+     */
+    static byte[] renderForBatch(CertificateMetadata metadata, String format) throws IOException, InterruptedException {
+        for (long backoffMillis = 5; ; backoffMillis = Math.min(2 * backoffMillis, 100)) {
+            Future<byte[]> render;
+            try {
+                render = renderExecutor.submit(() -> format.equals("pdf") 
+                        ? generatePdfCertificate(metadata) 
+                        : generatePngCertificate(metadata));
+            } catch (RenderExecutor.RenderRejectedException e) {
+                Thread.sleep(backoffMillis);
+                continue;
+            }
+            return RenderExecutor.await(render);
+        }
+    }
+    
+    private static byte[] awaitRender(CompletableFuture<byte[]> render) throws IOException {
+        try {
+            return render.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for certificate render");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Certificate render failed", cause);
+        }
     }
     
-    private static void validateCertificateRequest(CertificateRequest request) {
+    static void validateCertificateRequest(CertificateRequest request) {
         if (request == null) {
             throw new IllegalArgumentException("Certificate request cannot be null");
         }
@@ -151,107 +728,113 @@ public class AdvancedCertificateGenerator {
         if (request.getCompletionDate() == null) {
             throw new IllegalArgumentException("Completion date is required");
         }
+        if (SIGNED_QR) {
+            TokenKeyRing.checkClaimLengths(request.getCourseName(), request.getIssuerName());
+        }
     }
     
     private static String buildVerificationUrl(String certificateId) {
-        return "https://yourdomain.com/api/certificates/" + certificateId + "/verify";
+        return VERIFICATION_URL_PREFIX + certificateId + VERIFICATION_URL_SUFFIX;
+    }
+    
+    private static String buildSignedVerificationUrl(String certificateId, CertificateRequest request,
+                                                     LocalDate issueDate) throws IOException {
+        if (tokenKeys == null) {
+            throw new IOException("Token signing keys are unavailable");
+        }
+        long start = System.nanoTime();
+        try {
+            return TOKEN_URL_PREFIX + tokenKeys.sign(certificateId, request.getParticipantName(),
+                    request.getCourseName(), request.getIssuerName(), request.getCompletionDate(), issueDate);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to sign certificate token", e);
+        } finally {
+            TOKEN_SIGN_TIME.recordSince(start);
+        }
+    }
+    
+    private static OffHeapMetadataStore.View cacheMetadata(CertificateMetadata metadata) {
+        return metadataStore.put(metadata.getCertificateId(), metadata.getParticipantName(),
+                metadata.getCourseName(), metadata.getCompletionDate(), metadata.getIssuerName(),
+                metadata.getIssueDate(), metadata.getVerificationUrl(), metadata.pdfEtag, metadata.pngEtag,
+                metadata.getRecordEtag(), metadata.getRevokedAt());
     }
     
     private static String getDownloadUrl(String certificateId, String format) {
         return "https://yourdomain.com/api/certificates/" + certificateId + "/download?format=" + format;
     }
     
-    private static byte[] generateQRCodeImage(String text) throws WriterException, IOException {
-        Map<EncodeHintType, Object> hints = new HashMap<>();
-        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-        hints.put(EncodeHintType.MARGIN, 1);
-        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    static byte[] generateQRCodeImage(String text) throws WriterException, IOException {
+        BufferedImage qrImage = renderQRCodeImage(QRCodeRenderer.encodeModules(text, ErrorCorrectionLevel.H, "UTF-8"));
         
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, QR_CODE_SIZE, QR_CODE_SIZE, hints);
-        
-        BufferedImage qrImage = MatrixToImageWriter.toBufferedImage(bitMatrix);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(qrImage, "png", baos);
+        return baos.toByteArray();
+    }
+    
+    // Rasterizes into this thread's reusable QR buffer; the image is only valid until the next call
+    private static BufferedImage renderQRCodeImage(BitMatrix modules) {
+        BufferedImage qrImage = QR_CODE_RENDERER.render(modules);
         
         // Add logo to center of QR code
+        BufferedImage logo = RenderAssets.shared().scaledLogo(QR_LOGO_SIZE);
+        if (logo != null) {
+            Graphics2D graphics = qrImage.createGraphics();
+            int offset = (QR_CODE_SIZE - QR_LOGO_SIZE) / 2;
+            graphics.drawImage(logo, offset, offset, null);
+            graphics.dispose();
+        }
+        return qrImage;
+    }
+    
+    private static BitMatrix qrCodeModules(CertificateMetadata metadata) throws IOException {
         try {
-            BufferedImage logo = ImageIO.read(AdvancedCertificateGenerator.class.getResourceAsStream("/logo.png"));
-            if (logo != null) {
-                Graphics2D graphics = qrImage.createGraphics();
-                int logoSize = QR_CODE_SIZE / 5;
-                int x = (QR_CODE_SIZE - logoSize) / 2;
-                int y = (QR_CODE_SIZE - logoSize) / 2;
-                graphics.drawImage(logo, x, y, logoSize, logoSize, null);
-                graphics.dispose();
-            }
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "Could not add logo to QR code", e);
+            return metadata.getQrCodeModules();
+        } catch (WriterException e) {
+            throw new IOException("Failed to encode QR code for certificate: " + metadata.getCertificateId(), e);
+        }
+    }
+    
+    static byte[] generatePdfCertificate(CertificateMetadata metadata) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return buildPdfCertificate(metadata);
+        } finally {
+            PDF_BUILD_TIME.recordSince(start);
         }
-        
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(qrImage, "png", baos);
-        return baos.toByteArray();
     }
     
-    private static byte[] generatePdfCertificate(CertificateMetadata metadata) throws IOException {
+    private static byte[] buildPdfCertificate(CertificateMetadata metadata) throws IOException {
+        PdfCertificateTemplate template = PdfCertificateTemplate.CLASSIC;
+        RenderAssets assets = RenderAssets.shared();
+        RenderAssets.Palette palette = assets.palette();
         try (PDDocument document = new PDDocument()) {
-            PDPage page = new PDPage();
+            PDPage page = new PDPage(template.getMediaBox());
             document.addPage(page);
             
             try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
-                // Add background
-                contentStream.setNonStrokingColor(new Color(240, 240, 240));
-                contentStream.addRect(0, 0, page.getMediaBox().getWidth(), page.getMediaBox().getHeight());
-                contentStream.fill();
-                
-                // Add border
-                contentStream.setStrokingColor(new Color(67, 97, 238));
-                contentStream.setLineWidth(15);
-                contentStream.addRect(30, 30, 
-                    page.getMediaBox().getWidth() - 60, 
-                    page.getMediaBox().getHeight() - 60);
-                contentStream.stroke();
-                
-                // Add title
-                contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 36);
-                contentStream.setNonStrokingColor(new Color(67, 97, 238));
-                contentStream.newLineAtOffset(100, 650);
-                contentStream.showText("CERTIFICATE OF COMPLETION");
-                contentStream.endText();
-                
-                // Add body text
-                contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA, 14);
-                contentStream.setNonStrokingColor(Color.BLACK);
-                contentStream.newLineAtOffset(100, 600);
-                contentStream.showText("This is to certify that");
-                contentStream.endText();
+                // Add background, border, title and captions
+                template.drawStaticContent(contentStream);
                 
                 // Add participant name
                 contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 28);
-                contentStream.setNonStrokingColor(new Color(51, 51, 51));
+                PdfCertificateTemplate.setFont(contentStream, assets, RenderAssets.FontRole.NAME);
+                contentStream.setNonStrokingColor(palette.getEmphasis());
                 contentStream.newLineAtOffset(100, 550);
                 contentStream.showText(metadata.getParticipantName());
                 contentStream.endText();
                 
                 // Add course details
                 contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA, 14);
-                contentStream.newLineAtOffset(100, 500);
-                contentStream.showText("has successfully completed the course");
-                contentStream.endText();
-                
-                contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 18);
-                contentStream.setNonStrokingColor(new Color(67, 97, 238));
+                PdfCertificateTemplate.setFont(contentStream, assets, RenderAssets.FontRole.COURSE);
+                contentStream.setNonStrokingColor(palette.getPrimary());
                 contentStream.newLineAtOffset(100, 470);
                 contentStream.showText(metadata.getCourseName());
                 contentStream.endText();
                 
                 // Add dates
                 contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA, 12);
+                PdfCertificateTemplate.setFont(contentStream, assets, RenderAssets.FontRole.DETAIL);
                 contentStream.newLineAtOffset(100, 430);
                 contentStream.showText("Completed on: " + metadata.getCompletionDate().format(DATE_FORMATTER));
                 contentStream.endText();
@@ -263,15 +846,18 @@ public class AdvancedCertificateGenerator {
                 
                 // Add issuer
                 contentStream.beginText();
-                contentStream.setFont(PDType1Font.HELVETICA_OBLIQUE, 12);
+                PdfCertificateTemplate.setFont(contentStream, assets, RenderAssets.FontRole.ISSUER);
                 contentStream.newLineAtOffset(100, 350);
                 contentStream.showText("Issued by: " + metadata.getIssuerName());
                 contentStream.endText();
                 
-                // Add QR code
-                byte[] qrCode = Base64.getDecoder().decode(metadata.getQrCodeBase64());
-                PDImageXObject pdImage = PDImageXObject.createFromByteArray(document, qrCode, "qr-code");
-                contentStream.drawImage(pdImage, 400, 100, 150, 150);
+                // Add QR code as vector modules, with the logo on top
+                PdfQRCode.draw(contentStream, qrCodeModules(metadata), 400, 100, 150, 1);
+                PdfEncodedImage logo = assets.pdfLogo(QR_LOGO_SIZE);
+                if (logo != null) {
+                    // Encoded once; the document only gets a copy of the stream
+                    contentStream.drawImage(logo.createXObject(document), 460, 160, 30, 30);
+                }
             }
             
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -280,68 +866,50 @@ public class AdvancedCertificateGenerator {
         }
     }
     
-    private static byte[] generatePngCertificate(CertificateMetadata metadata) throws IOException {
-        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics = image.createGraphics();
-        
-        // Draw background
-        graphics.setColor(new Color(240, 240, 240));
-        graphics.fillRect(0, 0, 800, 600);
-        
-        // Draw border
-        graphics.setColor(new Color(67, 97, 238));
-        graphics.setStroke(new BasicStroke(10));
-        graphics.drawRect(20, 20, 760, 560);
-        
-        // Draw title
-        graphics.setColor(new Color(67, 97, 238));
-        graphics.setFont(new Font("Helvetica", Font.BOLD, 36));
-        graphics.drawString("CERTIFICATE OF COMPLETION", 100, 100);
-        
-        // Draw body text
-        graphics.setColor(Color.BLACK);
-        graphics.setFont(new Font("Helvetica", Font.PLAIN, 14));
-        graphics.drawString("This is to certify that", 100, 150);
-        
-        // Draw participant name
-        graphics.setColor(new Color(51, 51, 51));
-        graphics.setFont(new Font("Helvetica", Font.BOLD, 28));
-        graphics.drawString(metadata.getParticipantName(), 100, 200);
-        
-        // Draw course details
-        graphics.setColor(Color.BLACK);
-        graphics.setFont(new Font("Helvetica", Font.PLAIN, 14));
-        graphics.drawString("has successfully completed the course", 100, 250);
-        
-        graphics.setColor(new Color(67, 97, 238));
-        graphics.setFont(new Font("Helvetica", Font.BOLD, 18));
-        graphics.drawString(metadata.getCourseName(), 100, 280);
+    static byte[] generatePngCertificate(CertificateMetadata metadata) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return buildPngCertificate(metadata);
+        } finally {
+            PNG_ENCODE_TIME.recordSince(start);
+        }
+    }
+    
+    private static byte[] buildPngCertificate(CertificateMetadata metadata) throws IOException {
+        BufferedImage qrImage = renderQRCodeImage(qrCodeModules(metadata));
         
-        // Draw dates
-        graphics.setColor(Color.BLACK);
-        graphics.setFont(new Font("Helvetica", Font.PLAIN, 12));
-        graphics.drawString("Completed on: " + metadata.getCompletionDate().format(DATE_FORMATTER), 100, 320);
-        graphics.drawString("Issued on: " + metadata.getIssueDate().format(DATE_FORMATTER), 100, 340);
+        return PngCertificateTemplate.CLASSIC.render(
+                metadata.getParticipantName(),
+                metadata.getCourseName(),
+                metadata.getCompletionDate().format(DATE_FORMATTER),
+                metadata.getIssueDate().format(DATE_FORMATTER),
+                metadata.getIssuerName(),
+                qrImage
+        );
+    }
+    
+    private static CompletableFuture<Void> saveCertificateArtifacts(CertificateMetadata metadata, byte[] pdfContent, byte[] pngContent) 
+            throws IOException {
+        WriteBatch batch = new WriteBatch();
         
-        // Draw issuer
-        graphics.setFont(new Font("Helvetica", Font.ITALIC, 12));
-        graphics.drawString("Issued by: " + metadata.getIssuerName(), 100, 380);
+        // Save PDF
+        if (pdfContent != null) {
+            batch.put(metadata.getCertificateId(), RecordType.PDF, pdfContent);
+        }
         
-        // Draw QR code
-        byte[] qrCode = Base64.getDecoder().decode(metadata.getQrCodeBase64());
-        BufferedImage qrImage = ImageIO.read(new ByteArrayInputStream(qrCode));
-        graphics.drawImage(qrImage, 550, 400, 150, 150, null);
+        // Save PNG
+        if (pngContent != null) {
+            batch.put(metadata.getCertificateId(), RecordType.PNG, pngContent);
+        }
         
-        graphics.dispose();
+        // Save metadata, after the artifacts its tags describe; a torn tail only ever drops a suffix
+        batch.put(metadata.getCertificateId(), RecordType.METADATA, metadataRecord(metadata));
         
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", baos);
-        return baos.toByteArray();
+        // All records of the certificate go into the same group commit
+        return writer.submit(batch);
     }
     
-    private static void saveCertificateArtifacts(CertificateMetadata metadata, byte[] pdfContent, byte[] pngContent) 
-            throws IOException {
-        // Save metadata
+    private static byte[] metadataRecord(CertificateMetadata metadata) {
         JSONObject json = new JSONObject();
         json.put("certificateId", metadata.getCertificateId());
         json.put("participantName", metadata.getParticipantName());
@@ -350,45 +918,90 @@ public class AdvancedCertificateGenerator {
         json.put("issuerName", metadata.getIssuerName());
         json.put("issueDate", metadata.getIssueDate().format(DATE_FORMATTER));
         json.put("verificationUrl", metadata.getVerificationUrl());
-        json.put("qrCodeBase64", metadata.getQrCodeBase64());
-        
-        Path jsonPath = Paths.get(CERTIFICATES_DIR, metadata.getCertificateId() + ".json");
-        Files.write(jsonPath, json.toString().getBytes());
-        
-        // Save PDF
-        Path pdfPath = Paths.get(CERTIFICATES_DIR, metadata.getCertificateId() + ".pdf");
-        Files.write(pdfPath, pdfContent);
-        
-        // Save PNG
-        Path pngPath = Paths.get(CERTIFICATES_DIR, metadata.getCertificateId() + ".png");
-        Files.write(pngPath, pngContent);
+        // Artifacts not rendered yet have no tag; the record's own tag is computed on load
+        json.put("etags", new JSONObject()
+                .put("pdf", metadata.getEtag("pdf"))
+                .put("png", metadata.getEtag("png")));
+        json.put("revokedAt", metadata.getRevokedAt());
+        return json.toString().getBytes(StandardCharsets.UTF_8);
     }
     
     private static CertificateMetadata loadCertificateFromDisk(String certificateId) throws CertificateNotFoundException {
+        long start = System.nanoTime();
         try {
-            Path jsonPath = Paths.get(CERTIFICATES_DIR, certificateId + ".json");
-            if (!Files.exists(jsonPath)) {
-                return null;
+            byte[] stored = writer.get(certificateId, RecordType.METADATA);
+            if (stored == null) {
+                stored = readLegacyMetadata(certificateId);
+                if (stored == null) {
+                    ID_FILTER_FALSE_POSITIVES.increment();
+                    return null;
+                }
             }
-            
-            String content = new String(Files.readAllBytes(jsonPath));
-            JSONObject json = new JSONObject(content);
-            
-            return new CertificateMetadata(
-                    json.getString("certificateId"),
-                    json.getString("participantName"),
-                    json.getString("courseName"),
-                    LocalDate.parse(json.getString("completionDate"), DATE_FORMATTER),
-                    json.getString("issuerName"),
-                    LocalDate.parse(json.getString("issueDate"), DATE_FORMATTER),
-                    json.getString("verificationUrl"),
-                    json.getString("qrCodeBase64")
-            );
+            return parseMetadata(stored);
         } catch (IOException e) {
             throw new CertificateNotFoundException("Failed to load certificate: " + certificateId, e);
+        } finally {
+            DISK_LOAD_TIME.recordSince(start);
+        }
+    }
+    
+    private static Map<String, CertificateMetadata> loadCertificatesFromDisk(Collection<String> certificateIds)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            Map<String, byte[]> stored = writer.getAll(certificateIds, RecordType.METADATA);
+            Map<String, CertificateMetadata> loaded = new HashMap<>();
+            for (String certificateId : certificateIds) {
+                byte[] record = stored.get(certificateId);
+                if (record == null) {
+                    record = readLegacyMetadata(certificateId);
+                }
+                if (record != null) {
+                    loaded.put(certificateId, parseMetadata(record));
+                } else {
+                    ID_FILTER_FALSE_POSITIVES.increment();
+                }
+            }
+            return loaded;
+        } finally {
+            DISK_LOAD_TIME.recordSince(start);
         }
     }
     
+    // Metadata written before the segment store existed
+    private static byte[] readLegacyMetadata(String certificateId) throws IOException {
+        Path jsonPath = legacyPath(certificateId, "json");
+        return jsonPath != null && Files.exists(jsonPath) ? Files.readAllBytes(jsonPath) : null;
+    }
+    
+    // IDs come from request paths; null for one that would name a file outside the certificates directory
+    private static Path legacyPath(String certificateId, String extension) {
+        Path directory = Paths.get(CERTIFICATES_DIR).toAbsolutePath().normalize();
+        Path path = directory.resolve(certificateId + "." + extension).normalize();
+        return directory.equals(path.getParent()) ? path : null;
+    }
+    
+    private static CertificateMetadata parseMetadata(byte[] stored) {
+        JSONObject json = new JSONObject(new String(stored, StandardCharsets.UTF_8));
+        
+        CertificateMetadata metadata = new CertificateMetadata(
+                json.getString("certificateId"),
+                json.getString("participantName"),
+                json.getString("courseName"),
+                LocalDate.parse(json.getString("completionDate"), DATE_FORMATTER),
+                json.getString("issuerName"),
+                LocalDate.parse(json.getString("issueDate"), DATE_FORMATTER),
+                json.getString("verificationUrl")
+        );
+        metadata.restoreRevocation(json.optString("revokedAt", null));
+        // Certificates issued before tags were stored get artifact tags on their first download
+        JSONObject etags = json.optJSONObject("etags");
+        metadata.restoreEtags(etags != null ? etags.optString("pdf", null) : null,
+                etags != null ? etags.optString("png", null) : null,
+                metadata.computeRecordEtag());
+        return metadata;
+    }
+    
     // Data classes
     public static class CertificateRequest {
         private String participantName;
@@ -415,11 +1028,17 @@ public class AdvancedCertificateGenerator {
         private final String issuerName;
         private final LocalDate issueDate;
         private final String verificationUrl;
-        private final String qrCodeBase64;
+        private volatile BitMatrix qrCodeModules;
+        // Set before the metadata is published (see assignEtags), except the tag of an
+        // artifact rendered after issuance
+        private volatile String pdfEtag;
+        private volatile String pngEtag;
+        private String recordEtag;
+        private String revokedAt;
         
         public CertificateMetadata(String certificateId, String participantName, String courseName, 
                                  LocalDate completionDate, String issuerName, LocalDate issueDate,
-                                 String verificationUrl, String qrCodeBase64) {
+                                 String verificationUrl) {
             this.certificateId = certificateId;
             this.participantName = participantName;
             this.courseName = courseName;
@@ -427,7 +1046,53 @@ public class AdvancedCertificateGenerator {
             this.issuerName = issuerName;
             this.issueDate = issueDate;
             this.verificationUrl = verificationUrl;
-            this.qrCodeBase64 = qrCodeBase64;
+        }
+        
+        /**
+         * Materializes a cached record, for callers that need the full object.
+         */
+        static CertificateMetadata of(OffHeapMetadataStore.View view) {
+            CertificateMetadata metadata = new CertificateMetadata(view.getCertificateId(),
+                    view.getParticipantName(), view.getCourseName(), view.getCompletionDate(),
+                    view.getIssuerName(), view.getIssueDate(), view.getVerificationUrl());
+            metadata.restoreEtags(view.getPdfEtag(), view.getPngEtag(), view.getRecordEtag());
+            metadata.restoreRevocation(view.getRevokedAt());
+            return metadata;
+        }
+        
+        /**
+         * Computes the entity tags at issuance: artifacts from their bytes, left unset
+         * when they are rendered later, and the record from its content.
+         */
+        void assignEtags(byte[] pdfContent, byte[] pngContent) {
+            this.pdfEtag = pdfContent != null ? EntityTags.of(pdfContent) : null;
+            this.pngEtag = pngContent != null ? EntityTags.of(pngContent) : null;
+            this.recordEtag = computeRecordEtag();
+        }
+        
+        // Everything the verify response shows, revocation included
+        String computeRecordEtag() {
+            String record = String.join("\n", certificateId, participantName, courseName, completionDate.toString(),
+                    issuerName, issueDate.toString(), verificationUrl, String.valueOf(revokedAt));
+            return EntityTags.of(record.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        void setEtag(String format, String etag) {
+            if (format.equalsIgnoreCase("pdf")) {
+                this.pdfEtag = etag;
+            } else {
+                this.pngEtag = etag;
+            }
+        }
+        
+        void restoreEtags(String pdfEtag, String pngEtag, String recordEtag) {
+            this.pdfEtag = pdfEtag;
+            this.pngEtag = pngEtag;
+            this.recordEtag = recordEtag;
+        }
+        
+        void restoreRevocation(String revokedAt) {
+            this.revokedAt = revokedAt;
         }
         
         // Getters
@@ -438,7 +1103,28 @@ public class AdvancedCertificateGenerator {
         public String getIssuerName() { return issuerName; }
         public LocalDate getIssueDate() { return issueDate; }
         public String getVerificationUrl() { return verificationUrl; }
-        public String getQrCodeBase64() { return qrCodeBase64; }
+        public String getRecordEtag() { return recordEtag; }
+        public String getRevokedAt() { return revokedAt; }
+        public boolean isRevoked() { return revokedAt != null; }
+        
+        public String getEtag(String format) {
+            return format.equalsIgnoreCase("pdf") ? pdfEtag : pngEtag;
+        }
+        
+        /**
+         * QR modules for the verification URL, encoded on first use. Metadata that is
+         * only verified never pays for the encoding or holds the matrix.
+         */
+        public BitMatrix getQrCodeModules() throws WriterException {
+            BitMatrix modules = qrCodeModules;
+            if (modules == null) {
+                long start = System.nanoTime();
+                modules = QRCodeRenderer.encodeModules(verificationUrl, ErrorCorrectionLevel.H, "UTF-8");
+                QR_ENCODE_TIME.recordSince(start);
+                qrCodeModules = modules;
+            }
+            return modules;
+        }
     }
     
     public static class CertificateGenerationResult {
@@ -447,15 +1133,24 @@ public class AdvancedCertificateGenerator {
         private final String pdfDownloadUrl;
         private final String pngDownloadUrl;
         private final LocalDate issueDate;
+        private final transient CompletableFuture<Void> durability;
         
         public CertificateGenerationResult(String certificateId, String verificationUrl, 
                                          String pdfDownloadUrl, String pngDownloadUrl,
                                          LocalDate issueDate) {
+            this(certificateId, verificationUrl, pdfDownloadUrl, pngDownloadUrl, issueDate,
+                    CompletableFuture.completedFuture(null));
+        }
+        
+        public CertificateGenerationResult(String certificateId, String verificationUrl, 
+                                         String pdfDownloadUrl, String pngDownloadUrl,
+                                         LocalDate issueDate, CompletableFuture<Void> durability) {
             this.certificateId = certificateId;
             this.verificationUrl = verificationUrl;
             this.pdfDownloadUrl = pdfDownloadUrl;
             this.pngDownloadUrl = pngDownloadUrl;
             this.issueDate = issueDate;
+            this.durability = durability;
         }
         
         // Getters
@@ -464,6 +1159,11 @@ public class AdvancedCertificateGenerator {
         public String getPdfDownloadUrl() { return pdfDownloadUrl; }
         public String getPngDownloadUrl() { return pngDownloadUrl; }
         public LocalDate getIssueDate() { return issueDate; }
+        
+        /**
+         * Completes when the certificate's records have been fsynced.
+         */
+        public CompletableFuture<Void> getDurability() { return durability; }
     }
     
     public static class CertificateGenerationException extends Exception {
@@ -0,0 +1,421 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Staged pipeline for bulk certificate issuance.
+ *
+ * Items flow validate -> [sign] -> QR -> (PDF || PNG) -> persist, where signing
+ * only runs in signed QR mode. Every stage reads from a
+ * bounded queue, so a producer streaming a large cohort blocks once the pipeline
+ * is full instead of buffering the whole batch in memory.
+ *
+ * The PDF and PNG stages render on the generator's shared render pool, the same
+ * bulkhead as interactive generation and lazy downloads; their workers only wait
+ * for the result. Between them they keep at most {@code renderThreads} batch
+ * renders in the pool, so a bulk upload takes its share of the cores but cannot
+ * fill the render queue that the admission limiters watch.
+ *
+ * Pipeline threads never call back into the caller: finished items go to a small
+ * per-batch output queue that the batch's own thread drains while it submits and
+ * while it waits, so a slow client only slows down its own batch. The first
+ * result the listener fails to take, typically because the client went away,
+ * cancels the batch: its items still queued are dropped and the rest of its
+ * results are discarded.
+ */
+public class BatchGenerationPipeline {
+    private static final Logger logger = Logger.getLogger(BatchGenerationPipeline.class.getName());
+
+    private final BlockingQueue<BatchItem> validateQueue;
+    private final BlockingQueue<BatchItem> signQueue;
+    private final BlockingQueue<BatchItem> qrQueue;
+    private final BlockingQueue<BatchItem> pdfQueue;
+    private final BlockingQueue<BatchItem> pngQueue;
+    private final BlockingQueue<BatchItem> persistQueue;
+    private final List<BlockingQueue<BatchItem>> stageQueues;
+    private final int outputCapacity;
+
+    public BatchGenerationPipeline() {
+        this(Runtime.getRuntime().availableProcessors(), 256);
+    }
+
+    public BatchGenerationPipeline(int renderThreads, int queueCapacity) {
+        int workers = Math.max(1, renderThreads);
+        this.validateQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.signQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.qrQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.pdfQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.pngQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.persistQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.stageQueues = List.of(validateQueue, signQueue, qrQueue, pdfQueue, pngQueue, persistQueue);
+        this.outputCapacity = Math.max(1, queueCapacity);
+
+        startWorkers("batch-validate", 1, validateQueue, this::validate);
+        if (AdvancedCertificateGenerator.isSigningTokens()) {
+            startWorkers("batch-sign", Math.max(1, workers / 2), signQueue, this::sign);
+        }
+        startWorkers("batch-qr", Math.max(1, workers / 2), qrQueue, this::encodeQrCode);
+        int renderers = Math.max(1, workers / 2);
+        startWorkers("batch-pdf", renderers, pdfQueue, this::renderPdf);
+        startWorkers("batch-png", renderers, pngQueue, this::renderPng);
+        startWorkers("batch-persist", Math.max(1, workers / 4), persistQueue, this::persist);
+    }
+
+    /**
+     * Opens a new batch whose results are delivered to the given listener in
+     * completion order, on the thread that calls {@link Batch#submit},
+     * {@link Batch#reject} and {@link Batch#awaitCompletion}.
+     */
+    public Batch newBatch(ResultListener listener) {
+        return new Batch(listener);
+    }
+
+    // Stage implementations
+    private void validate(BatchItem item) throws InterruptedException {
+        try {
+            AdvancedCertificateGenerator.validateCertificateRequest(item.request);
+            (AdvancedCertificateGenerator.isSigningTokens() ? signQueue : qrQueue).put(item);
+        } catch (IllegalArgumentException e) {
+            fail(item, e);
+        }
+    }
+
+    // Signing the QR token runs on its own workers, overlapping with the encodes and renders downstream
+    private void sign(BatchItem item) throws InterruptedException {
+        try {
+            item.metadata = AdvancedCertificateGenerator.createCertificateMetadata(item.request);
+        } catch (IOException | IllegalArgumentException e) {
+            fail(item, e);
+            return;
+        }
+        qrQueue.put(item);
+    }
+
+    private void encodeQrCode(BatchItem item) throws InterruptedException {
+        if (item.metadata == null) {
+            try {
+                item.metadata = AdvancedCertificateGenerator.createCertificateMetadata(item.request);
+            } catch (IOException | IllegalArgumentException e) {
+                fail(item, e);
+                return;
+            }
+        }
+        if (AdvancedCertificateGenerator.isLazyRendering()) {
+            // Artifacts are rendered on first download, only the metadata is persisted
+            persistQueue.put(item);
+            return;
+        }
+
+        try {
+            // Encode once here so both renderers share the matrix
+            item.metadata.getQrCodeModules();
+        } catch (Exception e) {
+            fail(item, e);
+            return;
+        }
+        // Fan out: PDF and PNG render concurrently, the last one to finish forwards the item
+        pdfQueue.put(item);
+        pngQueue.put(item);
+    }
+
+    private void renderPdf(BatchItem item) throws InterruptedException {
+        try {
+            item.pdfContent = AdvancedCertificateGenerator.renderForBatch(item.metadata, "pdf");
+        } catch (Exception e) {
+            item.error = e;
+        }
+        joinRender(item);
+    }
+
+    private void renderPng(BatchItem item) throws InterruptedException {
+        try {
+            item.pngContent = AdvancedCertificateGenerator.renderForBatch(item.metadata, "png");
+        } catch (Exception e) {
+            item.error = e;
+        }
+        joinRender(item);
+    }
+
+    private void joinRender(BatchItem item) throws InterruptedException {
+        if (item.pendingRenders.decrementAndGet() != 0) {
+            return;
+        }
+        if (item.error != null) {
+            fail(item, item.error);
+        } else {
+            persistQueue.put(item);
+        }
+    }
+
+    private void persist(BatchItem item) {
+        try {
+            AdvancedCertificateGenerator.CertificateGenerationResult result = AdvancedCertificateGenerator.persistCertificate(
+                    item.metadata, item.pdfContent, item.pngContent);
+            if (!AdvancedCertificateGenerator.isWaitingForDurability()) {
+                item.batch.complete(item, result, null);
+                return;
+            }
+            // Report once the group commit lands, without holding the persist worker; the
+            // writer runs this on its callback thread, never on the flusher
+            result.getDurability().whenComplete((ignored, error) -> {
+                if (error == null) {
+                    item.batch.complete(item, result, null);
+                } else {
+                    fail(item, error);
+                }
+            });
+        } catch (Exception e) {
+            fail(item, e);
+        }
+    }
+
+    private void fail(BatchItem item, Throwable error) {
+        item.batch.complete(item, null, error);
+    }
+
+    private void startWorkers(String name, int count, BlockingQueue<BatchItem> queue, Stage stage) {
+        for (int i = 1; i <= count; i++) {
+            Thread worker = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        BatchItem item = queue.take();
+                        if (!item.batch.cancelled) {
+                            stage.process(item);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "Unexpected failure in " + name + " stage", e);
+                    }
+                }
+            }, name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void process(BatchItem item) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    public interface ResultListener {
+        void onResult(BatchResult result);
+    }
+
+    // A single cohort upload, driven by one thread; tracks in-flight items so the caller can wait for the tail
+    public class Batch {
+        private final ResultListener listener;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        // Finished items waiting for the batch's thread; at most outputCapacity, since submit()
+        // holds back while that many items are in flight or undelivered
+        private final ArrayDeque<BatchResult> outputs = new ArrayDeque<>();
+        private long submitted;
+        private long delivered;
+        private long failed;
+        // Written under the lock; pipeline workers read it without, to skip the batch's items
+        private volatile boolean cancelled;
+
+        private Batch(ResultListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Queues a request, blocking while the validate stage is full or while the
+         * batch has {@code queueCapacity} results not yet delivered. Results that are
+         * ready are delivered to the listener first. Does nothing once the batch is cancelled.
+         */
+        public void submit(long index, AdvancedCertificateGenerator.CertificateRequest request) throws InterruptedException {
+            while (true) {
+                deliverReady();
+                lock.lock();
+                try {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (submitted - delivered < outputCapacity) {
+                        submitted++;
+                        break;
+                    }
+                    if (outputs.isEmpty()) {
+                        ready.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            validateQueue.put(new BatchItem(this, index, request));
+        }
+
+        /**
+         * Reports a request that was rejected before entering the pipeline (e.g. unparseable input).
+         */
+        public void reject(long index, Throwable error) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                submitted++;
+            } finally {
+                lock.unlock();
+            }
+            complete(new BatchItem(this, index, null), null, error);
+            deliverReady();
+        }
+
+        /**
+         * Delivers results as they finish until every submitted item has been reported
+         * or the batch is cancelled.
+         */
+        public void awaitCompletion() throws InterruptedException {
+            while (true) {
+                deliverReady();
+                lock.lock();
+                try {
+                    if (delivered >= submitted || cancelled) {
+                        return;
+                    }
+                    if (outputs.isEmpty()) {
+                        ready.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Whether the listener failed and the batch was abandoned.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getSubmitted() {
+            lock.lock();
+            try {
+                return submitted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long getFailed() {
+            lock.lock();
+            try {
+                return failed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called from pipeline threads; only queues the result and never blocks
+        private void complete(BatchItem item, AdvancedCertificateGenerator.CertificateGenerationResult result, Throwable error) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                outputs.addLast(new BatchResult(item.index, result, error));
+                if (error != null) {
+                    failed++;
+                }
+                ready.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Runs on the batch's own thread; the listener is called without holding the lock
+        private void deliverReady() {
+            while (true) {
+                BatchResult next;
+                lock.lock();
+                try {
+                    next = outputs.pollFirst();
+                } finally {
+                    lock.unlock();
+                }
+                if (next == null) {
+                    return;
+                }
+                try {
+                    listener.onResult(next);
+                } catch (RuntimeException e) {
+                    cancel(next.getIndex(), e);
+                    return;
+                }
+                lock.lock();
+                try {
+                    delivered++;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        // Stops the batch after the listener failed: nothing more is submitted, rendered or delivered
+        private void cancel(long index, RuntimeException cause) {
+            int discarded;
+            lock.lock();
+            try {
+                cancelled = true;
+                discarded = outputs.size();
+                outputs.clear();
+                ready.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            // Frees the stage queues for other batches; items already taken are skipped as workers see the flag
+            for (BlockingQueue<BatchItem> queue : stageQueues) {
+                queue.removeIf(item -> item.batch == this);
+            }
+            logger.log(Level.WARNING, "Batch cancelled after the result listener failed for item " + index
+                    + "; discarded " + discarded + " finished result(s)", cause);
+        }
+    }
+
+    private static class BatchItem {
+        final Batch batch;
+        final long index;
+        final AdvancedCertificateGenerator.CertificateRequest request;
+        final AtomicInteger pendingRenders = new AtomicInteger(2);
+        AdvancedCertificateGenerator.CertificateMetadata metadata;
+        volatile byte[] pdfContent;
+        volatile byte[] pngContent;
+        volatile Throwable error;
+
+        BatchItem(Batch batch, long index, AdvancedCertificateGenerator.CertificateRequest request) {
+            this.batch = batch;
+            this.index = index;
+            this.request = request;
+        }
+    }
+
+    public static class BatchResult {
+        private final long index;
+        private final AdvancedCertificateGenerator.CertificateGenerationResult result;
+        private final Throwable error;
+
+        BatchResult(long index, AdvancedCertificateGenerator.CertificateGenerationResult result, Throwable error) {
+            this.index = index;
+            this.result = result;
+            this.error = error;
+        }
+
+        public long getIndex() { return index; }
+        public AdvancedCertificateGenerator.CertificateGenerationResult getResult() { return result; }
+        public Throwable getError() { return error; }
+        public boolean isSuccess() { return error == null; }
+    }
+}
@@ -1,21 +1,56 @@
 import com.sun.net.httpserver.*;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
 import java.util.logging.*;
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import java.security.*;
 import java.time.*;
 import java.time.format.*;
+import java.time.temporal.ChronoUnit;
+import cache.Cache;
+import cache.OffHeapMetadataStore;
+import cache.SegmentedLruCache;
+import http.ConcurrencyLimiter;
+import http.EntityTags;
+import http.RangeResponses;
+import http.ResponseCompressor;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import render.RenderAssets;
+import render.RenderExecutor;
+import signing.CertificateToken;
+import signing.TokenKeyRing;
+import storage.CompactId;
+import storage.ValueRegion;
 
 public class CertiAIServer {
     private static final Logger logger = Logger.getLogger(CertiAIServer.class.getName());
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson compactGson = new Gson();
     private static final String API_KEY = System.getenv("CERTIAI_API_KEY");
     private static final int MAX_REQUEST_SIZE = 1024 * 1024; // 1MB
-    private static final Map<String, Certificate> certificateCache = new ConcurrentHashMap<>();
+    private static final int MAX_BATCH_SIZE = 100_000;
+    private static final int MAX_VERIFY_BATCH_SIZE = ServerConfig.getInt("CERTIAI_VERIFY_BATCH_MAX_IDS", 1000);
+    private static volatile String executorMode = "fixed";
+    private static final Map<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private static GenerationJobQueue jobQueue;
+    private static final ResponseCompressor compressor = new ResponseCompressor(
+            ServerConfig.getInt("CERTIAI_COMPRESSION_MIN_BYTES", 1024),
+            ServerConfig.getInt("CERTIAI_COMPRESSION_LEVEL", 6));
+    private static final Cache<String, Certificate> certificateCache = new SegmentedLruCache<>(
+            ServerConfig.getLong("CERTIAI_METADATA_CACHE_BYTES", 64L * 1024 * 1024),
+            (id, certificate) -> certificate.estimateWeight());
+    private static final Cache<String, VerifyBody> verifyBodies = new SegmentedLruCache<>(
+            ServerConfig.getLong("CERTIAI_VERIFY_BODY_CACHE_BYTES", 32L * 1024 * 1024),
+            (id, body) -> body.estimateWeight());
 
     public static void main(String[] args) {
         try {
@@ -31,31 +66,157 @@ public class CertiAIServer {
         // Configure logging
         setupLogging();
 
+        // Load render assets before the first request needs them
+        AdvancedCertificateGenerator.warmUp();
+
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
 
         // Create context handlers with middleware
-        server.createContext("/api/generate", new AuthHandler(new CertificateGenerationHandler()));
-        server.createContext("/api/verify/", new AuthHandler(new CertificateVerificationHandler()));
-        server.createContext("/api/download/", new AuthHandler(new CertificateDownloadHandler()));
-        server.createContext("/api/health", new HealthHandler());
-
-        // Add global middleware
-        server.setMiddleware(exchange -> {
-            exchange.getResponseHeaders().add("X-Powered-By", "CertiAI");
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-        });
+        // Each endpoint has its own admission limit, so generation load never sheds verification
+        int cores = Runtime.getRuntime().availableProcessors();
+        IntSupplier renderBacklog = AdvancedCertificateGenerator::getRenderQueueDepth;
+        jobQueue = GenerationJobQueue.fromConfig();
+        createContext(server, "/api/generate", new TimedHandler("generate", new AuthHandler(new AdmissionHandler(
+                limiter("generate", 2 * cores, 1, 64 * cores, renderBacklog, 8 * cores),
+                new CertificateGenerationHandler(jobQueue)))));
+        createContext(server, "/api/jobs/", new TimedHandler("jobs", new AuthHandler(new AdmissionHandler(
+                limiter("jobs", 100, 10, 10_000, () -> 0, Integer.MAX_VALUE),
+                new JobStatusHandler(jobQueue)))));
+        createContext(server, "/api/generate/batch", new TimedHandler("batch", new AuthHandler(new AdmissionHandler(
+                limiter("batch", 2, 1, 8, () -> 0, Integer.MAX_VALUE),
+                new BatchGenerationHandler(new BatchGenerationPipeline())))));
+        createContext(server, "/api/verify/", new TimedHandler("verify", new AuthHandler(new AdmissionHandler(
+                limiter("verify", 100, 10, 10_000, () -> 0, Integer.MAX_VALUE),
+                new CertificateVerificationHandler()))));
+        // Longest prefix wins, so this takes /api/verify/batch away from the single verify handler
+        ThreadPoolExecutor lookupExecutor = createLookupExecutor();
+        createContext(server, "/api/verify/batch", new TimedHandler("verify_batch", new AuthHandler(new AdmissionHandler(
+                limiter("verify_batch", 4, 1, 64, lookupExecutor.getQueue()::size, 64 * cores),
+                new VerifyBatchHandler(lookupExecutor, ServerConfig.getInt("CERTIAI_VERIFY_BATCH_CHUNK_SIZE", 64))))));
+        // Signed QR tokens are checked against the public keys alone, without touching storage
+        createContext(server, "/api/verify/token/", new TimedHandler("verify_token", new AuthHandler(new AdmissionHandler(
+                limiter("verify_token", 100, 10, 10_000, () -> 0, Integer.MAX_VALUE),
+                new TokenVerificationHandler()))));
+        // Unauthenticated like health: public keys are for anyone verifying tokens offline
+        createContext(server, "/api/verify/keys", new TimedHandler("verify_keys", new TokenKeysHandler()));
+        createContext(server, "/api/download/", new TimedHandler("download", new AuthHandler(new AdmissionHandler(
+                limiter("download", 50, 4, 2_000, renderBacklog, 12 * cores),
+                new CertificateDownloadHandler()))));
+        createContext(server, "/api/health", new TimedHandler("health", new HealthHandler()));
+        // Unauthenticated like health, so scrapers need no API key
+        createContext(server, "/api/metrics", new MetricsHandler());
 
-        // Configure thread pool
-        ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
-        server.setExecutor(threadPoolExecutor);
+        // Request threads only parse, look up and stream; rendering runs on the generator's render pool
+        ExecutorService requestExecutor = createRequestExecutor();
+        server.setExecutor(requestExecutor);
+        registerMetrics(requestExecutor, lookupExecutor);
 
         server.start();
         logger.info("CertiAI Server running on port " + port);
         logger.info("Available endpoints:");
         logger.info("- POST /api/generate");
+        logger.info("- POST /api/generate/batch");
+        logger.info("- GET /api/jobs/{id}");
         logger.info("- GET /api/verify/{id}");
+        logger.info("- POST /api/verify/batch");
+        logger.info("- GET /api/verify/token/{token}");
+        logger.info("- GET /api/verify/keys");
         logger.info("- GET /api/download/{id}");
         logger.info("- GET /api/health");
+        logger.info("- GET /api/metrics");
+    }
+
+    // HttpServer has no global middleware hook, so every context gets the common filter
+    private static HttpContext createContext(HttpServer server, String path, HttpHandler handler) {
+        HttpContext context = server.createContext(path, handler);
+        context.getFilters().add(new PoweredByFilter());
+        return context;
+    }
+
+    private static void registerMetrics(ExecutorService requestExecutor, ThreadPoolExecutor lookupExecutor) {
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        metrics.gauge("certiai_cache_hit_ratio", "Hit ratio of each cache since startup",
+                () -> certificateCache.stats().getHitRatio(), "cache", "server_certificates");
+        if (requestExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) requestExecutor;
+            metrics.gauge("certiai_executor_queue_depth", "Tasks waiting in each executor queue",
+                    () -> pool.getQueue().size(), "executor", "http");
+        }
+        metrics.gauge("certiai_executor_queue_depth", "Tasks waiting in each executor queue",
+                () -> lookupExecutor.getQueue().size(), "executor", "verify_batch");
+        if (jobQueue != null) {
+            metrics.gauge("certiai_executor_queue_depth", "Tasks waiting in each executor queue",
+                    jobQueue::getQueueDepth, "executor", "jobs");
+        }
+        limiters.forEach((endpoint, limiter) -> {
+            metrics.gauge("certiai_admission_limit", "Current adaptive concurrency limit per endpoint",
+                    limiter::getLimit, "endpoint", endpoint);
+            metrics.gauge("certiai_admission_in_flight", "Requests currently admitted per endpoint",
+                    limiter::getInFlight, "endpoint", endpoint);
+        });
+    }
+
+    /**
+     * CERTIAI_EXECUTOR_MODE=virtual (default) runs each request on its own virtual
+     * thread; "fixed" uses CERTIAI_HTTP_THREADS platform threads with a queue of
+     * CERTIAI_HTTP_QUEUE_CAPACITY. Virtual threads need Java 21, so older runtimes
+     * fall back to the fixed pool.
+     */
+    private static ExecutorService createRequestExecutor() {
+        String mode = ServerConfig.getString("CERTIAI_EXECUTOR_MODE", "virtual");
+        if (mode.equalsIgnoreCase("virtual")) {
+            try {
+                // Looked up reflectively so the server still builds and runs on Java 17
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                executorMode = "virtual";
+                logger.info("Handling requests on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                logger.warning("Virtual threads need Java 21+, falling back to a fixed request pool");
+            }
+        }
+
+        int threads = ServerConfig.getInt("CERTIAI_HTTP_THREADS", 10);
+        int queueCapacity = ServerConfig.getInt("CERTIAI_HTTP_QUEUE_CAPACITY", 1000);
+        executorMode = "fixed";
+        logger.info("Handling requests on " + threads + " platform threads");
+        // A full queue makes the dispatcher run the request itself, so it stops accepting until it catches up
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Store lookups for batch verification, CERTIAI_VERIFY_BATCH_THREADS threads
+     * (default one per core). Kept off the render pool so large batches never delay
+     * rendering, and off the request pool so a batch can fan out.
+     */
+    private static ThreadPoolExecutor createLookupExecutor() {
+        int threads = ServerConfig.getInt("CERTIAI_VERIFY_BATCH_THREADS", Runtime.getRuntime().availableProcessors());
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "verify-lookup-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Builds an endpoint's limiter; every default can be overridden with
+     * CERTIAI_LIMIT_&lt;ENDPOINT&gt;_INITIAL, _MIN, _MAX and _MAX_BACKLOG.
+     */
+    private static ConcurrencyLimiter limiter(String endpoint, int initial, int min, int max,
+                                              IntSupplier backlog, int maxBacklog) {
+        String prefix = "CERTIAI_LIMIT_" + endpoint.toUpperCase() + "_";
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(endpoint,
+                ServerConfig.getInt(prefix + "INITIAL", initial),
+                ServerConfig.getInt(prefix + "MIN", min),
+                ServerConfig.getInt(prefix + "MAX", max),
+                backlog,
+                ServerConfig.getInt(prefix + "MAX_BACKLOG", maxBacklog));
+        limiters.put(endpoint, limiter);
+        return limiter;
     }
 
     private void setupLogging() {
@@ -104,10 +265,10 @@ public class CertiAIServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!authenticate(exchange)) {
-                sendResponse(exchange, 401, gson.toJson(Map.of(
+                sendJson(exchange, 401, Map.of(
                         "error", "Unauthorized",
                         "timestamp", Instant.now().toString()
-                )));
+                ));
                 return;
             }
             next.handle(exchange);
@@ -123,6 +284,100 @@ public class CertiAIServer {
         }
     }
 
+    // Admission control: rejects with 503 and Retry-After once the endpoint's adaptive limit is reached
+    static class AdmissionHandler implements HttpHandler {
+        private final ConcurrencyLimiter limiter;
+        private final HttpHandler next;
+
+        AdmissionHandler(ConcurrencyLimiter limiter, HttpHandler next) {
+            this.limiter = limiter;
+            this.next = next;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long permit = limiter.tryAcquire();
+            if (permit < 0) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(limiter.retryAfterSeconds()));
+                sendJson(exchange, 503, Map.of(
+                        "error", "Server busy, retry later",
+                        "endpoint", limiter.getName()
+                ));
+                return;
+            }
+
+            boolean succeeded = false;
+            try {
+                next.handle(exchange);
+                // Server errors (including a full render queue) count as overload signals
+                succeeded = exchange.getResponseCode() < 500;
+            } finally {
+                limiter.release(permit, succeeded);
+            }
+        }
+    }
+
+    // Content-Type is left to sendResponse and the download handlers
+    static class PoweredByFilter extends com.sun.net.httpserver.Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            exchange.getResponseHeaders().add("X-Powered-By", "CertiAI");
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "Adds X-Powered-By";
+        }
+    }
+
+    // Records request latency and response status per endpoint
+    static class TimedHandler implements HttpHandler {
+        private final HttpHandler next;
+        private final LatencyHistogram latency;
+        // Indexed by status code / 100
+        private final LongAdder[] responses = new LongAdder[6];
+
+        TimedHandler(String name, HttpHandler next) {
+            this.next = next;
+            MetricsRegistry metrics = MetricsRegistry.shared();
+            this.latency = metrics.histogram("certiai_http_request_duration_seconds",
+                    "Time from dispatch to response completion per handler", "handler", name);
+            for (int i = 1; i < responses.length; i++) {
+                responses[i] = metrics.counter("certiai_http_responses_total",
+                        "Responses sent per handler and status class", "handler", name, "code", i + "xx");
+            }
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            try {
+                next.handle(exchange);
+            } finally {
+                latency.recordSince(start);
+                int status = exchange.getResponseCode() / 100;
+                // -1 means the handler threw before responding; the server answers 500
+                responses[status >= 1 && status <= 5 ? status : 5].increment();
+            }
+        }
+    }
+
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of(
+                        "error", "Method not allowed",
+                        "allowed_methods", List.of("GET")
+                ));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            sendResponse(exchange, 200, MetricsRegistry.shared().scrape());
+        }
+    }
+
     // Health check handler
     static class HealthHandler implements HttpHandler {
         @Override
@@ -132,33 +387,65 @@ public class CertiAIServer {
             response.put("timestamp", Instant.now().toString());
             response.put("version", "1.0.0");
             response.put("system", System.getProperty("os.name"));
+            response.put("caches", Map.of(
+                    "certificates", certificateCache.stats().toMap(),
+                    "generator", AdvancedCertificateGenerator.getCacheStats()
+            ));
+            response.put("storage", AdvancedCertificateGenerator.getStorageStats());
+            response.put("compression", compressor.getStats());
+            if (jobQueue != null) {
+                response.put("jobs", Map.of("queued", jobQueue.getQueueDepth()));
+            }
+            Map<String, Object> admission = new TreeMap<>();
+            limiters.forEach((endpoint, limiter) -> admission.put(endpoint, limiter.getStats()));
+            response.put("admission", admission);
+            response.put("executor", Map.of(
+                    "requests", executorMode,
+                    "render", AdvancedCertificateGenerator.getRenderStats()
+            ));
+            response.put("renderAssets", Map.of(
+                    "hits", RenderAssets.shared().getHits(),
+                    "misses", RenderAssets.shared().getMisses()
+            ));
             
-            sendResponse(exchange, 200, gson.toJson(response));
+            sendJson(exchange, 200, response);
         }
     }
 
     // Certificate generation handler
     static class CertificateGenerationHandler implements HttpHandler {
+        private final GenerationJobQueue jobQueue;
+
+        CertificateGenerationHandler(GenerationJobQueue jobQueue) {
+            this.jobQueue = jobQueue;
+        }
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
-                sendResponse(exchange, 405, gson.toJson(Map.of(
+                sendJson(exchange, 405, Map.of(
                         "error", "Method not allowed",
                         "allowed_methods", List.of("POST")
-                )));
+                ));
                 return;
             }
 
             try {
                 // Read and validate request
                 String requestBody = readRequestBody(exchange);
-                CertificateRequest request = gson.fromJson(requestBody, CertificateRequest.class);
+                CertificateRequest request = compactGson.fromJson(requestBody, CertificateRequest.class);
                 
                 if (request == null || !request.isValid()) {
-                    sendResponse(exchange, 400, gson.toJson(Map.of(
+                    sendJson(exchange, 400, Map.of(
                             "error", "Invalid request",
                             "required_fields", List.of("participantName", "courseName", "completionDate", "issuerName")
-                    )));
+                    ));
+                    return;
+                }
+
+                // ?async=true: queue a job and answer right away instead of holding the connection
+                if ("true".equalsIgnoreCase(getQueryParam(exchange, "async", "false"))) {
+                    submitJob(exchange, request);
                     return;
                 }
 
@@ -175,25 +462,60 @@ public class CertiAIServer {
                         Instant.now().plus(365, ChronoUnit.DAYS) // 1 year validity
                 );
 
-                sendResponse(exchange, 201, gson.toJson(response));
+                sendJson(exchange, 201, response);
                 logger.info("Generated certificate: " + certificate.id);
 
             } catch (JsonSyntaxException e) {
-                sendResponse(exchange, 400, gson.toJson(Map.of(
+                sendJson(exchange, 400, Map.of(
                         "error", "Invalid JSON format",
                         "details", e.getMessage()
-                )));
+                ));
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Certificate generation failed", e);
-                sendResponse(exchange, 500, gson.toJson(Map.of(
+                sendJson(exchange, 500, Map.of(
                         "error", "Internal server error",
-                        "request_id", UUID.randomUUID().toString()
-                )));
+                        "request_id", CompactId.next()
+                ));
             }
         }
 
+        private void submitJob(HttpExchange exchange, CertificateRequest request) throws IOException {
+            AdvancedCertificateGenerator.CertificateRequest generatorRequest;
+            try {
+                generatorRequest = request.toGeneratorRequest();
+            } catch (DateTimeParseException e) {
+                sendJson(exchange, 400, Map.of(
+                        "error", "Invalid completionDate, expected yyyy-MM-dd"
+                ));
+                return;
+            }
+
+            // Bulk backfills yield to interactive issuance
+            GenerationJobQueue.Priority priority = "bulk".equalsIgnoreCase(getQueryParam(exchange, "priority", ""))
+                    ? GenerationJobQueue.Priority.BULK
+                    : GenerationJobQueue.Priority.INTERACTIVE;
+            GenerationJobQueue.Job job = jobQueue.submit(generatorRequest, priority);
+            if (job == null) {
+                exchange.getResponseHeaders().set("Retry-After", "30");
+                sendJson(exchange, 503, Map.of(
+                        "error", "Job queue is full, retry later"
+                ));
+                return;
+            }
+
+            String statusUrl = "/api/jobs/" + job.getId();
+            exchange.getResponseHeaders().set("Location", statusUrl);
+            sendJson(exchange, 202, Map.of(
+                    "jobId", job.getId(),
+                    "state", job.getState().name(),
+                    "priority", job.getPriority().name(),
+                    "statusUrl", statusUrl
+            ));
+            logger.info("Queued generation job: " + job.getId());
+        }
+
         private Certificate generateCertificate(CertificateRequest request) throws NoSuchAlgorithmException {
-            String id = UUID.randomUUID().toString();
+            String id = CompactId.next();
             String qrCode = generateQRCode(id);
             String pdfContent = generatePdfContent(request);
             String pngContent = generatePngContent(request);
@@ -227,137 +549,671 @@ public class CertiAIServer {
         }
     }
 
+    // Async generation job status
+    static class JobStatusHandler implements HttpHandler {
+        private final GenerationJobQueue jobQueue;
+
+        JobStatusHandler(GenerationJobQueue jobQueue) {
+            this.jobQueue = jobQueue;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of(
+                        "error", "Method not allowed",
+                        "allowed_methods", List.of("GET")
+                ));
+                return;
+            }
+
+            String id = exchange.getRequestURI().getPath().substring("/api/jobs/".length());
+            GenerationJobQueue.Job job = jobQueue.get(id);
+            if (job == null) {
+                sendJson(exchange, 404, Map.of(
+                        "error", "Job not found",
+                        "id", id
+                ));
+                return;
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("jobId", job.getId());
+            response.put("state", job.getState().name());
+            response.put("priority", job.getPriority().name());
+            response.put("submittedAt", job.getSubmittedAt().toString());
+            if (job.getStartedAt() != null) {
+                response.put("startedAt", job.getStartedAt().toString());
+            }
+            if (job.getCompletedAt() != null) {
+                response.put("completedAt", job.getCompletedAt().toString());
+            }
+            if (job.getCertificateId() != null) {
+                String certificateId = job.getCertificateId();
+                response.put("certificateId", certificateId);
+                response.put("verifyUrl", "/api/verify/" + certificateId);
+                response.put("downloadUrls", Map.of(
+                        "pdf", "/api/download/" + certificateId + "?format=pdf",
+                        "png", "/api/download/" + certificateId + "?format=png"
+                ));
+            }
+            if (job.getError() != null) {
+                response.put("error", job.getError());
+            }
+            sendJson(exchange, 200, response);
+        }
+    }
+
+    // Batch generation handler: streams NDJSON (or a JSON array) in and NDJSON results out
+    static class BatchGenerationHandler implements HttpHandler {
+        private final BatchGenerationPipeline pipeline;
+
+        BatchGenerationHandler(BatchGenerationPipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of(
+                        "error", "Method not allowed",
+                        "allowed_methods", List.of("POST")
+                ));
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0); // chunked, results are streamed as they complete
+
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+                 JsonReader reader = new JsonReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                BatchGenerationPipeline.Batch batch = pipeline.newBatch(result -> writeLine(writer, toResultLine(result)));
+
+                try {
+                    streamRequests(reader, batch);
+                } catch (JsonParseException | IOException e) {
+                    // Malformed input ends the stream, but everything already queued still completes
+                    batch.reject(batch.getSubmitted(), e);
+                }
+
+                batch.awaitCompletion();
+                if (batch.isCancelled()) {
+                    return; // the client is gone; the pipeline has logged why
+                }
+
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("total", batch.getSubmitted());
+                summary.put("succeeded", batch.getSubmitted() - batch.getFailed());
+                summary.put("failed", batch.getFailed());
+                writeLine(writer, Map.of("summary", summary));
+                logger.info("Batch generation completed: " + summary);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch generation interrupted", e);
+            }
+        }
+
+        private void streamRequests(JsonReader reader, BatchGenerationPipeline.Batch batch)
+                throws IOException, InterruptedException {
+            reader.setLenient(true); // allows consecutive top-level values (NDJSON)
+            boolean array = reader.peek() == JsonToken.BEGIN_ARRAY;
+            if (array) {
+                reader.beginArray();
+            }
+
+            long index = 0;
+            while (!batch.isCancelled() && reader.hasNext()) {
+                if (index >= MAX_BATCH_SIZE) {
+                    batch.reject(index, new IllegalArgumentException(
+                            "Batch size exceeds limit of " + MAX_BATCH_SIZE + " certificates"));
+                    return;
+                }
+
+                CertificateRequest request = compactGson.fromJson(reader, CertificateRequest.class);
+                if (request == null || !request.isValid()) {
+                    batch.reject(index++, new IllegalArgumentException("Invalid request: participantName, "
+                            + "courseName, completionDate and issuerName are required"));
+                    continue;
+                }
+
+                try {
+                    batch.submit(index, request.toGeneratorRequest());
+                } catch (DateTimeParseException e) {
+                    batch.reject(index, e);
+                }
+                index++;
+            }
+
+            if (array && !batch.isCancelled()) {
+                reader.endArray();
+            }
+        }
+
+        private Map<String, Object> toResultLine(BatchGenerationPipeline.BatchResult result) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", result.getIndex());
+            if (result.isSuccess()) {
+                AdvancedCertificateGenerator.CertificateGenerationResult certificate = result.getResult();
+                line.put("status", "created");
+                line.put("id", certificate.getCertificateId());
+                line.put("verifyUrl", certificate.getVerificationUrl());
+                line.put("pdfDownloadUrl", certificate.getPdfDownloadUrl());
+                line.put("pngDownloadUrl", certificate.getPngDownloadUrl());
+                line.put("issueDate", certificate.getIssueDate().toString());
+            } else {
+                line.put("status", "failed");
+                line.put("error", String.valueOf(result.getError().getMessage()));
+            }
+            return line;
+        }
+
+        // Only the request's own thread writes: the pipeline hands results back through the batch
+        private static void writeLine(Writer writer, Object line) {
+            try {
+                writer.write(compactGson.toJson(line));
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     // Certificate verification handler
     static class CertificateVerificationHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
-                sendResponse(exchange, 405, gson.toJson(Map.of(
+                sendJson(exchange, 405, Map.of(
                         "error", "Method not allowed",
                         "allowed_methods", List.of("GET")
-                )));
+                ));
                 return;
             }
 
             try {
                 String path = exchange.getRequestURI().getPath();
                 String id = path.substring("/api/verify/".length());
-
-                Certificate certificate = certificateCache.get(id);
-                if (certificate == null) {
-                    sendResponse(exchange, 404, gson.toJson(Map.of(
+                if (!isWellFormedId(id)) {
+                    sendJson(exchange, 404, Map.of(
                             "error", "Certificate not found",
                             "id", id
-                    )));
+                    ));
+                    return;
+                }
+
+                // The body embeds verificationDate, so it is only weakly equivalent across hits
+                VerifyBody body = verifyBodies.get(id);
+                if (body == null) {
+                    body = resolve(id);
+                    if (body == null) {
+                        sendJson(exchange, 404, Map.of(
+                                "error", "Certificate not found",
+                                "id", id
+                        ));
+                        return;
+                    }
+                    verifyBodies.put(id, body);
+                }
+                if (EntityTags.handleConditional(exchange, EntityTags.weak(body.etag), EntityTags.REVALIDATE)) {
                     return;
                 }
 
-                Map<String, Object> response = new LinkedHashMap<>();
-                response.put("id", certificate.id);
-                response.put("participantName", certificate.participantName);
-                response.put("courseName", certificate.courseName);
-                response.put("completionDate", certificate.completionDate);
-                response.put("issuerName", certificate.issuerName);
-                response.put("issueDate", certificate.issueDate.toString());
-                response.put("valid", true);
-                response.put("verificationDate", Instant.now().toString());
-
-                sendResponse(exchange, 200, gson.toJson(response));
+                byte[] response = body.render(Instant.now());
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                compressor.send(exchange, 200, response);
                 logger.info("Verified certificate: " + id);
 
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Certificate verification failed", e);
-                sendResponse(exchange, 500, gson.toJson(Map.of(
+                sendJson(exchange, 500, Map.of(
                         "error", "Internal server error",
-                        "request_id", UUID.randomUUID().toString()
-                )));
+                        "request_id", CompactId.next()
+                ));
+            }
+        }
+
+        private static VerifyBody resolve(String id) {
+            Certificate certificate = certificateCache.get(id);
+            if (certificate != null) {
+                return VerifyBody.of(certificate.etag, certificate.id, certificate.participantName,
+                        certificate.courseName, certificate.completionDate, certificate.issuerName,
+                        certificate.issueDate.toString(), null);
+            }
+            try {
+                return VerifyBody.of(AdvancedCertificateGenerator.getCertificateView(id));
+            } catch (AdvancedCertificateGenerator.CertificateNotFoundException e) {
+                return null;
             }
         }
     }
 
-    // Certificate download handler
-    static class CertificateDownloadHandler implements HttpHandler {
+    // Stateless verification of a signed QR token; ?name= additionally checks the participant's name
+    static class TokenVerificationHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
-                sendResponse(exchange, 405, gson.toJson(Map.of(
+                sendJson(exchange, 405, Map.of(
                         "error", "Method not allowed",
                         "allowed_methods", List.of("GET")
-                )));
+                ));
+                return;
+            }
+
+            String token = exchange.getRequestURI().getPath().substring("/api/verify/token/".length());
+            CertificateToken claims;
+            try {
+                claims = AdvancedCertificateGenerator.verifyToken(token);
+            } catch (CertificateToken.InvalidTokenException e) {
+                sendJson(exchange, 400, Map.of(
+                        "valid", false,
+                        "error", "Invalid token",
+                        "reason", e.getMessage()
+                ));
+                return;
+            }
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", claims.getCertificateId());
+            body.put("courseName", claims.getCourseName());
+            body.put("completionDate", claims.getCompletionDate().toString());
+            body.put("issuerName", claims.getIssuerName());
+            body.put("issueDate", claims.getIssueDate().toString());
+            body.put("keyId", claims.getKeyId());
+            body.put("valid", true);
+            String name = getQueryParam(exchange, "name", null);
+            if (name != null) {
+                body.put("nameMatches", claims.matchesName(name));
+            }
+            // Only the store knows about revocations; /api/verify/{id} reports them
+            body.put("revocationChecked", false);
+            body.put("verificationDate", Instant.now().toString());
+            // The answer depends on nothing but the token, so clients may keep it
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=3600");
+            sendJson(exchange, 200, body);
+        }
+    }
+
+    // Public token keys, for verifiers that check signed QR codes without calling back
+    static class TokenKeysHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of(
+                        "error", "Method not allowed",
+                        "allowed_methods", List.of("GET")
+                ));
+                return;
+            }
+
+            int activeKeyId = AdvancedCertificateGenerator.getActiveTokenKeyId();
+            List<Map<String, Object>> keys = new ArrayList<>();
+            for (TokenKeyRing.TokenKey key : AdvancedCertificateGenerator.getTokenKeys()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("keyId", key.getId());
+                entry.put("algorithm", key.getSignatureAlgorithm());
+                entry.put("publicKey", key.getEncodedPublicKey());
+                entry.put("createdAt", key.getCreatedAt().toString());
+                entry.put("active", key.getId() == activeKeyId);
+                keys.add(entry);
+            }
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=300");
+            sendJson(exchange, 200, Map.of("keys", keys));
+        }
+    }
+
+    // Batch verification handler: a JSON array of IDs (or {"ids": [...]}) in, NDJSON results out
+    static class VerifyBatchHandler implements HttpHandler {
+        private final ExecutorService lookupExecutor;
+        private final int chunkSize;
+
+        VerifyBatchHandler(ExecutorService lookupExecutor, int chunkSize) {
+            this.lookupExecutor = lookupExecutor;
+            this.chunkSize = Math.max(1, chunkSize);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of(
+                        "error", "Method not allowed",
+                        "allowed_methods", List.of("POST")
+                ));
+                return;
+            }
+
+            // IDs are read up front so an oversized or malformed batch is still answered with a status code
+            Set<String> ids;
+            try (JsonReader reader = new JsonReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                ids = readIds(reader);
+            } catch (JsonParseException | IllegalStateException | IOException e) {
+                // Truncated or malformed JSON surfaces from JsonReader as an IOException
+                sendJson(exchange, 400, Map.of(
+                        "error", "Expected a JSON array of certificate IDs or an object with an \"ids\" array"
+                ));
+                return;
+            }
+            if (ids == null) {
+                sendJson(exchange, 400, Map.of(
+                        "error", "Batch size exceeds limit of " + MAX_VERIFY_BATCH_SIZE + " IDs"
+                ));
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0); // chunked, results are streamed as they resolve
+
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                BatchTally tally = new BatchTally();
+
+                // Certificates this server issued recently are answered before any lookup starts
+                List<Map<String, Object>> immediate = new ArrayList<>();
+                List<String> pending = new ArrayList<>();
+                for (String id : ids) {
+                    Certificate certificate = isWellFormedId(id) ? certificateCache.get(id) : null;
+                    if (certificate != null) {
+                        immediate.add(tally.found(foundLine(id, certificate.participantName, certificate.courseName,
+                                certificate.completionDate, certificate.issuerName, certificate.issueDate.toString())));
+                    } else if (isWellFormedId(id)) {
+                        pending.add(id);
+                    } else {
+                        immediate.add(tally.notFound(id));
+                    }
+                }
+                writeLines(writer, immediate);
+
+                // The rest resolve in parallel chunks; each chunk reads the store in segment order, and
+                // sorting first keeps compact IDs, which are time-ordered like the log, in neighbouring chunks
+                Collections.sort(pending);
+                List<Future<?>> lookups = new ArrayList<>();
+                for (int from = 0; from < pending.size(); from += chunkSize) {
+                    List<String> chunk = pending.subList(from, Math.min(pending.size(), from + chunkSize));
+                    lookups.add(lookupExecutor.submit(() -> writeLines(writer, lookUp(chunk, tally))));
+                }
+                for (Future<?> lookup : lookups) {
+                    lookup.get();
+                }
+
+                Map<String, Object> summary = tally.toSummary();
+                writeLines(writer, List.of(Map.of("summary", summary)));
+                logger.info("Batch verification completed: " + summary);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch verification interrupted", e);
+            } catch (ExecutionException e) {
+                // Only a broken connection gets here; lookup failures are reported per ID
+                throw new IOException("Batch verification failed", e.getCause());
+            }
+        }
+
+        // Distinct IDs in request order, or null once the batch is over the limit
+        private static Set<String> readIds(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                Set<String> ids = Collections.emptySet();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("ids")) {
+                        ids = readIdArray(reader);
+                        if (ids == null) {
+                            return null;
+                        }
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                return ids;
+            }
+            return readIdArray(reader);
+        }
+
+        private static Set<String> readIdArray(JsonReader reader) throws IOException {
+            Set<String> ids = new LinkedHashSet<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ids.add(reader.nextString());
+                if (ids.size() > MAX_VERIFY_BATCH_SIZE) {
+                    return null;
+                }
+            }
+            reader.endArray();
+            return ids;
+        }
+
+        private static List<Map<String, Object>> lookUp(List<String> ids, BatchTally tally) {
+            List<Map<String, Object>> lines = new ArrayList<>(ids.size());
+            Map<String, AdvancedCertificateGenerator.CertificateMetadata> found;
+            try {
+                found = AdvancedCertificateGenerator.getCertificateMetadata(ids);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Batch verification lookup failed", e);
+                for (String id : ids) {
+                    lines.add(tally.failed(id));
+                }
+                return lines;
+            }
+            for (String id : ids) {
+                AdvancedCertificateGenerator.CertificateMetadata metadata = found.get(id);
+                if (metadata == null) {
+                    lines.add(tally.notFound(id));
+                    continue;
+                }
+                Map<String, Object> line = foundLine(id, metadata.getParticipantName(), metadata.getCourseName(),
+                        metadata.getCompletionDate().toString(), metadata.getIssuerName(),
+                        metadata.getIssueDate().toString());
+                if (metadata.isRevoked()) {
+                    line.put("status", "revoked");
+                    line.put("revokedAt", metadata.getRevokedAt());
+                    lines.add(tally.revoked(line));
+                } else {
+                    lines.add(tally.found(line));
+                }
+            }
+            return lines;
+        }
+
+        private static Map<String, Object> foundLine(String id, String participantName, String courseName,
+                                                     String completionDate, String issuerName, String issueDate) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("id", id);
+            line.put("status", "found");
+            line.put("participantName", participantName);
+            line.put("courseName", courseName);
+            line.put("completionDate", completionDate);
+            line.put("issuerName", issuerName);
+            line.put("issueDate", issueDate);
+            return line;
+        }
+
+        private static void writeLines(Writer writer, List<Map<String, Object>> lines) {
+            if (lines.isEmpty()) {
+                return;
+            }
+            StringBuilder out = new StringBuilder(lines.size() * 192);
+            for (Map<String, Object> line : lines) {
+                compactGson.toJson(line, out);
+                out.append('\n');
+            }
+            synchronized (writer) {
+                try {
+                    writer.append(out);
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private static final class BatchTally {
+            private final LongAdder found = new LongAdder();
+            private final LongAdder notFound = new LongAdder();
+            private final LongAdder revoked = new LongAdder();
+            private final LongAdder failed = new LongAdder();
+
+            Map<String, Object> found(Map<String, Object> line) {
+                found.increment();
+                return line;
+            }
+
+            Map<String, Object> revoked(Map<String, Object> line) {
+                revoked.increment();
+                return line;
+            }
+
+            Map<String, Object> notFound(String id) {
+                notFound.increment();
+                return statusLine(id, "not-found");
+            }
+
+            Map<String, Object> failed(String id) {
+                failed.increment();
+                return statusLine(id, "error");
+            }
+
+            private static Map<String, Object> statusLine(String id, String status) {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("id", id);
+                line.put("status", status);
+                return line;
+            }
+
+            Map<String, Object> toSummary() {
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("total", found.sum() + notFound.sum() + revoked.sum() + failed.sum());
+                summary.put("found", found.sum());
+                summary.put("notFound", notFound.sum());
+                summary.put("revoked", revoked.sum());
+                summary.put("failed", failed.sum());
+                return summary;
+            }
+        }
+    }
+
+    // Certificate download handler
+    static class CertificateDownloadHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+                sendJson(exchange, 405, Map.of(
+                        "error", "Method not allowed",
+                        "allowed_methods", List.of("GET", "HEAD")
+                ));
                 return;
             }
 
             try {
                 String path = exchange.getRequestURI().getPath();
                 String id = path.substring("/api/download/".length());
-                String format = getQueryParam(exchange, "format", "pdf");
-
-                Certificate certificate = certificateCache.get(id);
-                if (certificate == null) {
-                    sendResponse(exchange, 404, gson.toJson(Map.of(
+                if (!isWellFormedId(id)) {
+                    sendJson(exchange, 404, Map.of(
                             "error", "Certificate not found",
                             "id", id
-                    )));
+                    ));
                     return;
                 }
+                String format = getQueryParam(exchange, "format", "pdf").toLowerCase();
 
-                String content;
                 String contentType;
-                String fileName = "certificate_" + id;
-
-                switch (format.toLowerCase()) {
+                switch (format) {
                     case "pdf":
-                        content = certificate.pdfContent;
                         contentType = "application/pdf";
-                        fileName += ".pdf";
                         break;
                     case "png":
-                        content = certificate.pngContent;
                         contentType = "image/png";
-                        fileName += ".png";
                         break;
                     default:
-                        sendResponse(exchange, 400, gson.toJson(Map.of(
+                        sendJson(exchange, 400, Map.of(
                                 "error", "Invalid format",
                                 "supported_formats", List.of("pdf", "png")
-                        )));
+                        ));
                         return;
                 }
+                String fileName = "certificate_" + id + "." + format;
+
+                Certificate certificate = certificateCache.get(id);
+                String etag;
+                try {
+                    etag = certificate != null
+                            ? (format.equals("pdf") ? certificate.pdfEtag : certificate.pngEtag)
+                            : AdvancedCertificateGenerator.getCertificateEtag(id, format);
+                } catch (AdvancedCertificateGenerator.CertificateNotFoundException e) {
+                    sendJson(exchange, 404, Map.of(
+                            "error", "Certificate not found",
+                            "id", id
+                    ));
+                    return;
+                }
+                // Answered from metadata alone, before the artifact is opened
+                if (EntityTags.handleConditional(exchange, etag, EntityTags.IMMUTABLE)) {
+                    return;
+                }
+
+                ValueRegion region;
+                if (certificate != null) {
+                    String content = format.equals("pdf") ? certificate.pdfContent : certificate.pngContent;
+                    region = ValueRegion.of(content.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    // Issued through the generator: streamed from the store without a heap copy
+                    region = AdvancedCertificateGenerator.openCertificateFile(id, format);
+                }
 
                 exchange.getResponseHeaders().set("Content-Type", contentType);
                 exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
-                exchange.sendResponseHeaders(200, content.length());
-
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(content.getBytes());
+                try (ValueRegion body = region) {
+                    RangeResponses.send(exchange, body);
                 }
 
                 logger.info("Downloaded certificate: " + id + " as " + format);
 
+            } catch (RenderExecutor.RenderRejectedException e) {
+                // Lazy render could not be queued; the client should come back shortly
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendJson(exchange, 503, Map.of(
+                        "error", "Renderer busy, retry shortly"
+                ));
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Certificate download failed", e);
-                sendResponse(exchange, 500, gson.toJson(Map.of(
+                sendJson(exchange, 500, Map.of(
                         "error", "Internal server error",
-                        "request_id", UUID.randomUUID().toString()
-                )));
+                        "request_id", CompactId.next()
+                ));
             }
         }
+    }
 
-        private String getQueryParam(HttpExchange exchange, String name, String defaultValue) {
-            String query = exchange.getRequestURI().getQuery();
-            if (query == null) return defaultValue;
-            
-            for (String param : query.split("&")) {
-                String[] pair = param.split("=");
-                if (pair.length > 0 && pair[0].equals(name)) {
-                    return pair.length > 1 ? pair[1] : defaultValue;
-                }
+    // Helper methods
+
+    // Issued IDs are compact IDs or legacy UUIDs; anything else cannot exist and must not reach
+    // a cache or the legacy file lookup, which builds a path from the ID
+    private static boolean isWellFormedId(String id) {
+        if (id.isEmpty() || id.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '~')) {
+                return false;
             }
-            return defaultValue;
         }
+        return true;
+    }
+
+    private static String getQueryParam(HttpExchange exchange, String name, String defaultValue) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) return defaultValue;
+        
+        for (String param : query.split("&")) {
+            String[] pair = param.split("=");
+            if (pair.length > 0 && pair[0].equals(name)) {
+                return pair.length > 1 ? pair[1] : defaultValue;
+            }
+        }
+        return defaultValue;
     }
 
-    // Helper methods
     private static String readRequestBody(HttpExchange exchange) throws IOException {
         InputStream is = exchange.getRequestBody();
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -377,11 +1233,24 @@ public class CertiAIServer {
         return bos.toString(StandardCharsets.UTF_8);
     }
 
+    // Compact JSON written through the compressor as it is serialized
+    private static void sendJson(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+        try (Writer writer = new OutputStreamWriter(compressor.open(exchange, statusCode), StandardCharsets.UTF_8)) {
+            compactGson.toJson(body, writer);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        }
+    }
+
     private static void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.sendResponseHeaders(statusCode, response.length());
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
         }
+        // Length is taken from the encoded bytes, not the character count
+        compressor.send(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
     }
 
     // Data classes
@@ -398,6 +1267,15 @@ public class CertiAIServer {
                     && completionDate != null && !completionDate.isEmpty()
                     && issuerName != null && !issuerName.isEmpty();
         }
+
+        AdvancedCertificateGenerator.CertificateRequest toGeneratorRequest() {
+            AdvancedCertificateGenerator.CertificateRequest request = new AdvancedCertificateGenerator.CertificateRequest();
+            request.setParticipantName(participantName);
+            request.setCourseName(courseName);
+            request.setCompletionDate(LocalDate.parse(completionDate));
+            request.setIssuerName(issuerName);
+            return request;
+        }
     }
 
     static class CertificateResponse {
@@ -405,14 +1283,146 @@ public class CertiAIServer {
         String message;
         String downloadUrl;
         String verifyUrl;
-        Instant validUntil;
+        // ISO-8601; Gson cannot reflect into java.time types on Java 17+
+        String validUntil;
 
         CertificateResponse(String id, String message, String downloadUrl, String verifyUrl, Instant validUntil) {
             this.id = id;
             this.message = message;
             this.downloadUrl = downloadUrl;
             this.verifyUrl = verifyUrl;
-            this.validUntil = validUntil;
+            this.validUntil = validUntil.toString();
+        }
+    }
+
+    /**
+     * A certificate's verify response, pre-encoded as UTF-8 up to the opening
+     * quote of {@code verificationDate}, the only part that changes per request.
+     */
+    static class VerifyBody {
+        private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+        final String etag;
+        private final byte[] prefix;
+
+        private VerifyBody(String etag, byte[] prefix) {
+            this.etag = etag;
+            this.prefix = prefix;
+        }
+
+        static VerifyBody of(String etag, String id, String participantName, String courseName,
+                             String completionDate, String issuerName, String issueDate, String revokedAt) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("id", id);
+            fields.put("participantName", participantName);
+            fields.put("courseName", courseName);
+            fields.put("completionDate", completionDate);
+            fields.put("issuerName", issuerName);
+            fields.put("issueDate", issueDate);
+            fields.put("valid", revokedAt == null);
+            if (revokedAt != null) {
+                fields.put("revokedAt", revokedAt);
+            }
+            String json = compactGson.toJson(fields);
+            // Reopen the object for the per-request field
+            String prefix = json.substring(0, json.length() - 1) + ",\"verificationDate\":\"";
+            return new VerifyBody(etag, prefix.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Encodes the body straight from the off-heap record's UTF-8, escaping as
+         * {@code compactGson} would, so no field is decoded into a string.
+         */
+        static VerifyBody of(OffHeapMetadataStore.View view) {
+            JsonBytes json = new JsonBytes();
+            json.ascii("{\"id\":\"");
+            view.writeUtf8(OffHeapMetadataStore.Text.CERTIFICATE_ID, json);
+            json.ascii("\",\"participantName\":\"");
+            view.writeUtf8(OffHeapMetadataStore.Text.PARTICIPANT_NAME, json);
+            json.ascii("\",\"courseName\":\"");
+            view.writeUtf8(OffHeapMetadataStore.Text.COURSE_NAME, json);
+            json.ascii("\",\"completionDate\":\"");
+            json.ascii(LocalDate.ofEpochDay(view.getCompletionEpochDay()).toString());
+            json.ascii("\",\"issuerName\":\"");
+            view.writeUtf8(OffHeapMetadataStore.Text.ISSUER_NAME, json);
+            json.ascii("\",\"issueDate\":\"");
+            json.ascii(LocalDate.ofEpochDay(view.getIssueEpochDay()).toString());
+            if (view.isRevoked()) {
+                json.ascii("\",\"valid\":false,\"revokedAt\":\"");
+                view.writeUtf8(OffHeapMetadataStore.Text.REVOKED_AT, json);
+                json.ascii("\",\"verificationDate\":\"");
+            } else {
+                json.ascii("\",\"valid\":true,\"verificationDate\":\"");
+            }
+            return new VerifyBody(view.getRecordEtag(), json.toByteArray());
+        }
+
+        byte[] render(Instant verificationDate) {
+            String date = verificationDate.toString(); // ISO-8601, ASCII only
+            byte[] body = Arrays.copyOf(prefix, prefix.length + date.length() + SUFFIX.length);
+            for (int i = 0; i < date.length(); i++) {
+                body[prefix.length + i] = (byte) date.charAt(i);
+            }
+            System.arraycopy(SUFFIX, 0, body, prefix.length + date.length(), SUFFIX.length);
+            return body;
+        }
+
+        long estimateWeight() {
+            return 64 + prefix.length + 40 + etag.length();
+        }
+
+        /**
+         * JSON string content written from UTF-8 bytes, with Gson's HTML-safe escaping.
+         */
+        private static final class JsonBytes extends ByteArrayOutputStream implements OffHeapMetadataStore.Utf8Sink {
+            private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+            JsonBytes() {
+                super(256);
+            }
+
+            void ascii(String text) {
+                for (int i = 0; i < text.length(); i++) {
+                    write(text.charAt(i));
+                }
+            }
+
+            @Override
+            public void write(ByteBuffer source, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    int b = source.get(i) & 0xFF;
+                    switch (b) {
+                        case '"': ascii("\\\""); break;
+                        case '\\': ascii("\\\\"); break;
+                        case '\t': ascii("\\t"); break;
+                        case '\b': ascii("\\b"); break;
+                        case '\n': ascii("\\n"); break;
+                        case '\r': ascii("\\r"); break;
+                        case '\f': ascii("\\f"); break;
+                        case '<': case '>': case '&': case '=': case '\'':
+                            unicodeEscape(b);
+                            break;
+                        default:
+                            if (b < 0x20) {
+                                unicodeEscape(b);
+                            } else if (b == 0xE2 && i + 2 < offset + length && source.get(i + 1) == (byte) 0x80
+                                    && (source.get(i + 2) == (byte) 0xA8 || source.get(i + 2) == (byte) 0xA9)) {
+                                // U+2028 and U+2029 end lines in JavaScript
+                                unicodeEscape(source.get(i + 2) == (byte) 0xA8 ? 0x2028 : 0x2029);
+                                i += 2;
+                            } else {
+                                write(b);
+                            }
+                    }
+                }
+            }
+
+            private void unicodeEscape(int c) {
+                ascii("\\u");
+                for (int shift = 12; shift >= 0; shift -= 4) {
+                    write(HEX[c >> shift & 0xF]);
+                }
+            }
         }
     }
 
@@ -426,6 +1436,9 @@ public class CertiAIServer {
         String pdfContent;
         String pngContent;
         Instant issueDate;
+        String etag;
+        String pdfEtag;
+        String pngEtag;
 
         Certificate(String id, String participantName, String courseName, String completionDate, 
                    String issuerName, String qrCode, String pdfContent, String pngContent, Instant issueDate) {
@@ -438,6 +1451,20 @@ public class CertiAIServer {
             this.pdfContent = pdfContent;
             this.pngContent = pngContent;
             this.issueDate = issueDate;
+            this.etag = EntityTags.of(String.join("\n", id, participantName, courseName, completionDate,
+                    issuerName, issueDate.toString()).getBytes(StandardCharsets.UTF_8));
+            this.pdfEtag = EntityTags.of(pdfContent.getBytes(StandardCharsets.UTF_8));
+            this.pngEtag = EntityTags.of(pngContent.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Approximate retained heap size in bytes, used to weigh cache entries
+        long estimateWeight() {
+            long weight = 64 + 3 * 64; // including the three entity tags
+            for (String value : new String[] {id, participantName, courseName, completionDate, issuerName,
+                    qrCode, pdfContent, pngContent}) {
+                weight += value == null ? 0 : 40 + value.length();
+            }
+            return weight;
         }
     }
 }
\ No newline at end of file
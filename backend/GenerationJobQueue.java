@@ -0,0 +1,392 @@
+import org.json.JSONObject;
+import storage.CompactId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous certificate generation jobs.
+ *
+ * Jobs wait in one queue per priority; interactive issuances are always taken
+ * before bulk backfills. Within a priority, issuers take turns, so one issuer
+ * backfilling a large cohort cannot starve the others. Every state change is
+ * written to {@code jobs/<id>.json} under the certificates directory; on startup
+ * finished jobs are reloaded for status lookups and unfinished ones are queued
+ * again. Finished jobs older than the retention period are dropped, from memory
+ * and disk, at startup and by a periodic sweep.
+ *
+ * Job files are forced to disk before they replace the previous state. Running
+ * a job and recording its outcome are still two steps: if the process dies
+ * after the certificate is stored but before the job is saved as succeeded, the
+ * job is found running at startup and runs again, issuing a second certificate,
+ * under a new ID, for the same request.
+ */
+public class GenerationJobQueue {
+    private static final Logger logger = Logger.getLogger(GenerationJobQueue.class.getName());
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final Path directory;
+    private final int capacity;
+    private final Duration retention;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // Guarded by lock: per priority, issuers in turn order and each issuer's pending jobs
+    private final Map<Priority, Deque<String>> issuerTurns = new EnumMap<>(Priority.class);
+    private final Map<Priority, Map<String, Deque<Job>>> pendingByIssuer = new EnumMap<>(Priority.class);
+    private int pending;
+
+    /**
+     * @param sweepInterval delay between retention sweeps of finished jobs
+     */
+    public GenerationJobQueue(Path directory, int workers, int capacity, Duration retention, Duration sweepInterval)
+            throws IOException {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.retention = retention;
+        for (Priority priority : Priority.values()) {
+            issuerTurns.put(priority, new ArrayDeque<>());
+            pendingByIssuer.put(priority, new LinkedHashMap<>());
+        }
+        Files.createDirectories(directory);
+        recover();
+
+        for (int i = 1; i <= Math.max(1, workers); i++) {
+            Thread thread = new Thread(this::runWorker, "generation-job-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "generation-job-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, sweepInterval.toMillis());
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static GenerationJobQueue fromConfig() throws IOException {
+        return new GenerationJobQueue(Paths.get(ServerConfig.getString("CERTIAI_CERTIFICATES_DIR", "certificates"), "jobs"),
+                ServerConfig.getInt("CERTIAI_JOB_WORKERS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                ServerConfig.getInt("CERTIAI_JOB_QUEUE_CAPACITY", 10_000),
+                Duration.ofHours(ServerConfig.getLong("CERTIAI_JOB_RETENTION_HOURS", 7 * 24)),
+                Duration.ofMinutes(ServerConfig.getLong("CERTIAI_JOB_SWEEP_INTERVAL_MINUTES", 60)));
+    }
+
+    /**
+     * Queues a generation job, or returns {@code null} if the queue is full.
+     */
+    public Job submit(AdvancedCertificateGenerator.CertificateRequest request, Priority priority) throws IOException {
+        if (getQueueDepth() >= capacity) {
+            return null;
+        }
+        // Written before taking the lock, so submitters and workers never wait on file I/O
+        Job job = new Job(CompactId.next(), request, priority, Instant.now());
+        save(job);
+        lock.lock();
+        try {
+            if (pending < capacity) {
+                jobs.put(job.id, job);
+                enqueue(job);
+                return job;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Filled up while the file was written
+        Files.deleteIfExists(jobPath(job.id));
+        return null;
+    }
+
+    public Job get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must hold lock
+    private void enqueue(Job job) {
+        Map<String, Deque<Job>> byIssuer = pendingByIssuer.get(job.priority);
+        Deque<Job> issuerJobs = byIssuer.get(job.issuerKey());
+        if (issuerJobs == null) {
+            issuerJobs = new ArrayDeque<>();
+            byIssuer.put(job.issuerKey(), issuerJobs);
+            issuerTurns.get(job.priority).addLast(job.issuerKey());
+        }
+        issuerJobs.addLast(job);
+        pending++;
+        notEmpty.signal();
+    }
+
+    private Job take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending == 0) {
+                notEmpty.await();
+            }
+            for (Priority priority : Priority.values()) {
+                Deque<String> turns = issuerTurns.get(priority);
+                String issuer = turns.pollFirst();
+                if (issuer == null) {
+                    continue;
+                }
+                Deque<Job> issuerJobs = pendingByIssuer.get(priority).get(issuer);
+                Job job = issuerJobs.pollFirst();
+                if (issuerJobs.isEmpty()) {
+                    pendingByIssuer.get(priority).remove(issuer);
+                } else {
+                    turns.addLast(issuer); // back of the line until every other issuer had a turn
+                }
+                pending--;
+                return job;
+            }
+            throw new IllegalStateException("Pending count out of sync with queues");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            Job job;
+            try {
+                job = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(job);
+        }
+    }
+
+    private void run(Job job) {
+        job.state = State.RUNNING;
+        job.startedAt = Instant.now();
+        saveQuietly(job);
+        try {
+            AdvancedCertificateGenerator.CertificateGenerationResult result =
+                    AdvancedCertificateGenerator.generateCertificate(job.request);
+            job.certificateId = result.getCertificateId();
+            job.state = State.SUCCEEDED;
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.state = State.FAILED;
+            logger.log(Level.WARNING, "Generation job " + job.id + " failed", e);
+        }
+        job.completedAt = Instant.now();
+        saveQuietly(job);
+    }
+
+    private void recover() throws IOException {
+        Instant cutoff = Instant.now().minus(retention);
+        List<Job> unfinished = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path path : stream) {
+                Job job;
+                try {
+                    job = Job.fromJson(new JSONObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)));
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Skipping unreadable job file " + path, e);
+                    continue;
+                }
+                if (job.completedAt != null && job.completedAt.isBefore(cutoff)) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                jobs.put(job.id, job);
+                if (job.state == State.QUEUED || job.state == State.RUNNING) {
+                    unfinished.add(job);
+                }
+            }
+        }
+
+        // Jobs interrupted by the restart run again, oldest first
+        unfinished.sort((a, b) -> a.submittedAt.compareTo(b.submittedAt));
+        lock.lock();
+        try {
+            for (Job job : unfinished) {
+                job.state = State.QUEUED;
+                job.startedAt = null;
+                enqueue(job);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!jobs.isEmpty()) {
+            logger.info("Recovered " + jobs.size() + " generation job(s), " + unfinished.size() + " requeued");
+        }
+    }
+
+    // Drops finished jobs past retention from memory and disk; unfinished jobs are never swept
+    private void sweep() throws IOException {
+        Instant cutoff = Instant.now().minus(retention);
+        int removed = 0;
+        for (Job job : jobs.values()) {
+            Instant completedAt = job.completedAt;
+            if (completedAt != null && completedAt.isBefore(cutoff) && jobs.remove(job.id, job)) {
+                Files.deleteIfExists(jobPath(job.id));
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info("Removed " + removed + " generation job(s) finished before " + cutoff);
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Generation job retention sweep failed", e);
+        }
+    }
+
+    private void saveQuietly(Job job) {
+        try {
+            save(job);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to persist state of generation job " + job.id, e);
+        }
+    }
+
+    // Temp file, forced to disk, then renamed, so a crash leaves the old state or the new one and
+    // never a half-written or empty job file
+    private void save(Job job) throws IOException {
+        Path target = jobPath(job.id);
+        Path temp = directory.resolve(job.id + ".json.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(job.toJson().toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // Makes the rename durable too. Some platforms cannot open a directory for syncing; there it is skipped
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Cannot sync job directory " + directory, e);
+        }
+    }
+
+    private Path jobPath(String jobId) {
+        return directory.resolve(jobId + ".json");
+    }
+
+    public static class Job {
+        private final String id;
+        private final AdvancedCertificateGenerator.CertificateRequest request;
+        private final Priority priority;
+        private final Instant submittedAt;
+        private volatile State state = State.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant completedAt;
+        private volatile String certificateId;
+        private volatile String error;
+
+        Job(String id, AdvancedCertificateGenerator.CertificateRequest request, Priority priority, Instant submittedAt) {
+            this.id = id;
+            this.request = request;
+            this.priority = priority;
+            this.submittedAt = submittedAt;
+        }
+
+        // Issuer names are free text; normalize so "ACME" and "acme " share a turn
+        String issuerKey() {
+            String issuer = request.getIssuerName();
+            return issuer == null ? "" : issuer.trim().toLowerCase();
+        }
+
+        public String getId() { return id; }
+        public Priority getPriority() { return priority; }
+        public State getState() { return state; }
+        public Instant getSubmittedAt() { return submittedAt; }
+        public Instant getStartedAt() { return startedAt; }
+        public Instant getCompletedAt() { return completedAt; }
+        public String getCertificateId() { return certificateId; }
+        public String getError() { return error; }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("priority", priority.name());
+            json.put("state", state.name());
+            json.put("participantName", request.getParticipantName());
+            json.put("courseName", request.getCourseName());
+            json.put("completionDate", request.getCompletionDate() == null ? null : request.getCompletionDate().toString());
+            json.put("issuerName", request.getIssuerName());
+            json.put("submittedAt", submittedAt.toString());
+            json.put("startedAt", startedAt == null ? null : startedAt.toString());
+            json.put("completedAt", completedAt == null ? null : completedAt.toString());
+            json.put("certificateId", certificateId);
+            json.put("error", error);
+            return json;
+        }
+
+        static Job fromJson(JSONObject json) {
+            AdvancedCertificateGenerator.CertificateRequest request = new AdvancedCertificateGenerator.CertificateRequest();
+            request.setParticipantName(json.optString("participantName", null));
+            request.setCourseName(json.optString("courseName", null));
+            String completionDate = json.optString("completionDate", null);
+            request.setCompletionDate(completionDate == null ? null : LocalDate.parse(completionDate));
+            request.setIssuerName(json.optString("issuerName", null));
+
+            Job job = new Job(json.getString("id"), request, Priority.valueOf(json.getString("priority")),
+                    Instant.parse(json.getString("submittedAt")));
+            job.state = State.valueOf(json.getString("state"));
+            job.startedAt = parseInstant(json.optString("startedAt", null));
+            job.completedAt = parseInstant(json.optString("completedAt", null));
+            job.certificateId = json.optString("certificateId", null);
+            job.error = json.optString("error", null);
+            return job;
+        }
+
+        private static Instant parseInstant(String value) {
+            return value == null ? null : Instant.parse(value);
+        }
+    }
+}
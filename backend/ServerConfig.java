@@ -0,0 +1,61 @@
+import java.util.logging.Logger;
+
+/**
+ * Reads tuning settings from environment variables (e.g. {@code CERTIAI_RENDER_MODE}),
+ * falling back to the equivalent system property ({@code -Dcertiai.render.mode})
+ * and then to the given default.
+ */
+public final class ServerConfig {
+    private static final Logger logger = Logger.getLogger(ServerConfig.class.getName());
+
+    private ServerConfig() {
+    }
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            value = System.getProperty(toPropertyName(name));
+        }
+        return value == null || value.isEmpty() ? defaultValue : value.trim();
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warning("Ignoring invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    public static double getDouble(String name, double defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            logger.warning("Ignoring invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    // CERTIAI_RENDER_MODE -> certiai.render.mode
+    private static String toPropertyName(String name) {
+        return name.toLowerCase().replace('_', '.');
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import cache.Cache;
+import cache.SegmentedLruCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SegmentedLruCache} lookups from many threads at once: read-only hits,
+ * and reads alongside a writer churning a working set larger than the budget,
+ * as when verification traffic meets a batch issuance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheContentionBenchmark {
+    private static final int KEYS = 100_000;
+    private static final int ENTRY_BYTES = 512;
+
+    private Cache<String, byte[]> cache;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = String.format("3f1c2a9e-7b4d-4e8a-9c1f-%012d", i);
+        }
+        // Budget for 80% of the keys, so the writer keeps evicting
+        cache = new SegmentedLruCache<>((long) KEYS * 8 / 10 * (ENTRY_BYTES + 64),
+                (key, value) -> 64L + value.length);
+        byte[] value = new byte[ENTRY_BYTES];
+        for (String key : keys) {
+            cache.put(key, value);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] read() {
+        return cache.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public byte[] mixedRead() {
+        return cache.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite() {
+        cache.put(randomKey(), new byte[ENTRY_BYTES]);
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reflective access to the package-private stages of {@code AdvancedCertificateGenerator}.
+ *
+ * The server classes live in the default package, which Java code in a named
+ * package (and therefore JMH) cannot import. The handles are static finals, so
+ * the JIT treats them as constants and the call overhead stays in the noise.
+ *
+ * The generator opens its store on class initialization; it is pointed at a
+ * fresh temporary directory first, so benchmarks never touch real certificates.
+ */
+final class Generator {
+    static final Path DIRECTORY;
+    private static final MethodHandle NEW_METADATA;
+    private static final MethodHandle ASSIGN_ETAGS;
+    private static final MethodHandle QR_CODE_IMAGE;
+    private static final MethodHandle PDF;
+    private static final MethodHandle PNG;
+    private static final MethodHandle SAVE;
+    private static final MethodHandle LOAD;
+
+    static {
+        try {
+            DIRECTORY = Files.createTempDirectory("certiai-bench");
+            System.setProperty("certiai.certificates.dir", DIRECTORY.toString());
+
+            Class<?> generator = Class.forName("AdvancedCertificateGenerator");
+            Class<?> metadata = Class.forName("AdvancedCertificateGenerator$CertificateMetadata");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            Constructor<?> constructor = metadata.getConstructor(String.class, String.class, String.class,
+                    LocalDate.class, String.class, LocalDate.class, String.class);
+            NEW_METADATA = lookup.unreflectConstructor(constructor);
+            ASSIGN_ETAGS = lookup.unreflect(accessible(metadata, "assignEtags", byte[].class, byte[].class));
+            QR_CODE_IMAGE = lookup.unreflect(accessible(generator, "generateQRCodeImage", String.class));
+            PDF = lookup.unreflect(accessible(generator, "generatePdfCertificate", metadata));
+            PNG = lookup.unreflect(accessible(generator, "generatePngCertificate", metadata));
+            SAVE = lookup.unreflect(accessible(generator, "saveCertificateArtifacts", metadata, byte[].class, byte[].class));
+            LOAD = lookup.unreflect(accessible(generator, "loadCertificateFromDisk", String.class));
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Generator() {
+    }
+
+    private static Method accessible(Class<?> owner, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        Method method = owner.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+        return method;
+    }
+
+    /**
+     * A new metadata instance; its QR modules are encoded on first use.
+     */
+    static Object metadata(String certificateId, String participantName) throws Throwable {
+        return NEW_METADATA.invoke(certificateId, participantName, "Distributed Systems Engineering",
+                LocalDate.of(2024, 6, 14), "CertiAI Academy", LocalDate.of(2024, 6, 20),
+                "https://yourdomain.com/api/certificates/" + certificateId + "/verify");
+    }
+
+    static void assignEtags(Object metadata, byte[] pdf, byte[] png) throws Throwable {
+        ASSIGN_ETAGS.invoke(metadata, pdf, png);
+    }
+
+    static byte[] qrCodeImage(String text) throws Throwable {
+        return (byte[]) QR_CODE_IMAGE.invoke(text);
+    }
+
+    static byte[] pdf(Object metadata) throws Throwable {
+        return (byte[]) PDF.invoke(metadata);
+    }
+
+    static byte[] png(Object metadata) throws Throwable {
+        return (byte[]) PNG.invoke(metadata);
+    }
+
+    static CompletableFuture<?> save(Object metadata, byte[] pdf, byte[] png) throws Throwable {
+        return (CompletableFuture<?>) SAVE.invoke(metadata, pdf, png);
+    }
+
+    static Object load(String certificateId) throws Throwable {
+        return LOAD.invoke(certificateId);
+    }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import storage.CompactId;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Certificate ID generation from many threads, random UUID strings against
+ * {@link CompactId}, and parsing the compact text form back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdBenchmark {
+    private String compactText;
+
+    @Setup
+    public void setUp() {
+        compactText = CompactId.next();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String compactId() {
+        return CompactId.next();
+    }
+
+    @Benchmark
+    public CompactId parseCompactId() {
+        return CompactId.parse(compactText);
+    }
+}
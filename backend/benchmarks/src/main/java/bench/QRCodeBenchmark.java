@@ -0,0 +1,95 @@
+package bench;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import qr.QRCodeGenerator;
+import qr.QRCodeRenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QR code generation: the generator's PNG with logo, the plain
+ * {@link QRCodeGenerator} image, module encoding on its own, and
+ * {@link QRCodeRenderer} row rasterization against the per-pixel
+ * {@code setRGB} loop it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class QRCodeBenchmark {
+    private static final String URL =
+            "https://yourdomain.com/api/certificates/3f1c2a9e-7b4d-4e8a-9c1f-2d6b8e0a4c17/verify";
+    private static final int SIZE = 300;
+
+    private BitMatrix modules;
+    private BitMatrix scaled;
+    private QRCodeRenderer renderer;
+
+    @Setup
+    public void setUp() throws WriterException {
+        modules = QRCodeRenderer.encodeModules(URL, ErrorCorrectionLevel.H, "UTF-8");
+        scaled = scale(modules, SIZE, 1);
+        renderer = new QRCodeRenderer(SIZE, SIZE, 1, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public byte[] generatorPng() throws Throwable {
+        return Generator.qrCodeImage(URL);
+    }
+
+    @Benchmark
+    public BufferedImage qrCodeGenerator() throws WriterException {
+        return QRCodeGenerator.generateQRCodeImage(URL, SIZE, SIZE);
+    }
+
+    @Benchmark
+    public BitMatrix encodeModules() throws WriterException {
+        return QRCodeRenderer.encodeModules(URL, ErrorCorrectionLevel.H, "UTF-8");
+    }
+
+    @Benchmark
+    public BufferedImage rasterizeRows() {
+        return renderer.render(modules);
+    }
+
+    @Benchmark
+    public BufferedImage rasterizePerPixel() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                image.setRGB(x, y, scaled.get(x, y) ? 0xFF000000 : 0xFFFFFFFF);
+            }
+        }
+        return image;
+    }
+
+    // Pixel-level matrix as produced by QRCodeWriter, input for the per-pixel loop
+    private static BitMatrix scale(BitMatrix modules, int size, int quietZone) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        QRCodeRenderer.rasterize(modules, quietZone, image);
+        BitMatrix scaled = new BitMatrix(size, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if ((image.getRGB(x, y) & 0xFFFFFF) == 0) {
+                    scaled.set(x, y);
+                }
+            }
+        }
+        return scaled;
+    }
+}
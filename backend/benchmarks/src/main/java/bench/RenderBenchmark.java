@@ -0,0 +1,45 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-certificate rendering cost.
+ *
+ * {@code pdf} and {@code png} go through the generator with new metadata on
+ * every call, so each includes encoding the certificate's QR modules, as a real
+ * issuance does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+    private int sequence;
+
+    @Benchmark
+    public byte[] pdf() throws Throwable {
+        return Generator.pdf(nextMetadata());
+    }
+
+    @Benchmark
+    public byte[] png() throws Throwable {
+        return Generator.png(nextMetadata());
+    }
+
+    private Object nextMetadata() throws Throwable {
+        int n = sequence++;
+        return Generator.metadata(String.format("3f1c2a9e-7b4d-4e8a-9c1f-%012d", n), "Participant " + n);
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisting and loading certificates through the generator's group-commit
+ * writer, in a temporary store.
+ *
+ * {@code save} waits for the fsync, so it measures one durable issuance on an
+ * otherwise idle writer. It writes metadata only by default; run with
+ * {@code -p withArtifacts=true} to include a rendered PDF and PNG, which grows
+ * the store by their size on every call. {@code load} reads and parses the
+ * metadata record of a random certificate, bypassing the metadata cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    private static final int STORED_CERTIFICATES = 10_000;
+
+    @Param({"false"})
+    public boolean withArtifacts;
+
+    private byte[] pdf;
+    private byte[] png;
+    private String[] storedIds;
+    private int sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        if (withArtifacts) {
+            Object sample = Generator.metadata(id(-1), "Sample Participant");
+            pdf = Generator.pdf(sample);
+            png = Generator.png(sample);
+        }
+        storedIds = new String[STORED_CERTIFICATES];
+        for (int i = 0; i < storedIds.length; i++) {
+            storedIds[i] = id(i);
+            Object metadata = Generator.metadata(storedIds[i], "Participant " + i);
+            Generator.assignEtags(metadata, null, null);
+            Generator.save(metadata, null, null);
+        }
+        // The writer applies batches in order, so this waits for all of them
+        Object last = Generator.metadata(id(STORED_CERTIFICATES), "Participant");
+        Generator.assignEtags(last, null, null);
+        Generator.save(last, null, null).join();
+        sequence = STORED_CERTIFICATES + 1;
+    }
+
+    @Benchmark
+    public Object save() throws Throwable {
+        Object metadata = Generator.metadata(id(sequence++), "Participant");
+        Generator.assignEtags(metadata, pdf, png);
+        return Generator.save(metadata, pdf, png).join();
+    }
+
+    @Benchmark
+    public Object load() throws Throwable {
+        return Generator.load(storedIds[ThreadLocalRandom.current().nextInt(storedIds.length)]);
+    }
+
+    private static String id(int n) {
+        return String.format("5b2e8d41-0c7a-4f3e-a1d9-%012d", n & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,58 @@
+package bench;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing the body of {@code GET /api/verify/{id}} the way the
+ * verification handler does, down to the UTF-8 bytes handed to the response, with
+ * the server's pretty-printing Gson and with a compact one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerifyResponseBenchmark {
+    private final Gson pretty = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson compact = new Gson();
+
+    @Benchmark
+    public byte[] pretty() {
+        return pretty.toJson(response()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] compact() {
+        return compact.toJson(response()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> response() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", "3f1c2a9e-7b4d-4e8a-9c1f-2d6b8e0a4c17");
+        response.put("participantName", "Ada Lovelace");
+        response.put("courseName", "Distributed Systems Engineering");
+        response.put("completionDate", "2024-06-14");
+        response.put("issuerName", "CertiAI Academy");
+        response.put("issueDate", "2024-06-20");
+        response.put("valid", true);
+        response.put("verificationDate", Instant.now().toString());
+        return response;
+    }
+}
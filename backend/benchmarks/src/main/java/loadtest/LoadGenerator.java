@@ -0,0 +1,381 @@
+package loadtest;
+
+import com.google.gson.JsonParser;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for a running CertiAIServer, for capacity planning.
+ *
+ * Open loop ({@code --mode open}) issues requests at a fixed arrival rate no
+ * matter how slowly the server answers, like real users do. Closed loop
+ * ({@code --mode closed}) runs a fixed number of clients back to back,
+ * optionally paced to a total {@code --rate}.
+ *
+ * Latencies are measured from when each request was due to be sent, not from
+ * when the generator got around to sending it, so a stalled server shows up in
+ * the percentiles instead of silently lowering the request rate (coordinated
+ * omission). Unpaced closed-loop runs can be corrected after the fact with
+ * {@code --expected-interval}. Uncorrected p99 is printed alongside for comparison.
+ *
+ * Usage: java -cp benchmarks.jar loadtest.LoadGenerator [--url http://localhost:8080]
+ *        [--mode open|closed] [--rate 200] [--concurrency 16] [--duration 60s] [--warmup 10s]
+ *        [--mix generate=5,verify=80,download=15] [--miss-ratio 0.01] [--seed 200]
+ *        [--expected-interval 0ms] [--timeout 30s] [--api-key KEY] [--semester-end 2024-06-14]
+ */
+public class LoadGenerator {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final String apiKey;
+    private final Duration timeout;
+    private final Workload workload;
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private volatile long measureFromNanos = Long.MAX_VALUE;
+
+    LoadGenerator(URI baseUri, String apiKey, Duration timeout, Workload workload, List<String> endpoints) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.baseUri = baseUri;
+        this.apiKey = apiKey;
+        this.timeout = timeout;
+        this.workload = workload;
+        for (String endpoint : endpoints) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        stats.putIfAbsent("generate", new EndpointStats());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String mode = options.getOrDefault("mode", "open").toLowerCase(Locale.ROOT);
+        double rate = Double.parseDouble(options.getOrDefault("rate", mode.equals("open") ? "200" : "0"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", mode.equals("open") ? "1000" : "16"));
+        Duration duration = parseDuration(options.getOrDefault("duration", "60s"));
+        Duration warmup = parseDuration(options.getOrDefault("warmup", "10s"));
+        Duration expectedInterval = parseDuration(options.getOrDefault("expected-interval", "0ms"));
+        String mixSpec = options.getOrDefault("mix", "generate=5,verify=80,download=15");
+        Map<Workload.Operation, Double> mix = Workload.parseMix(mixSpec);
+        if (!mode.equals("open") && !mode.equals("closed")) {
+            throw new IllegalArgumentException("--mode must be open or closed");
+        }
+        if (mode.equals("open") && rate <= 0) {
+            throw new IllegalArgumentException("Open loop needs a --rate");
+        }
+
+        Workload workload = new Workload(mix,
+                Double.parseDouble(options.getOrDefault("miss-ratio", "0.01")),
+                LocalDate.parse(options.getOrDefault("semester-end", LocalDate.now().toString())));
+        LoadGenerator generator = new LoadGenerator(
+                URI.create(options.getOrDefault("url", "http://localhost:8080")),
+                options.getOrDefault("api-key", System.getenv("CERTIAI_API_KEY")),
+                parseDuration(options.getOrDefault("timeout", "30s")),
+                workload, Workload.endpoints(mix));
+
+        int seed = Integer.parseInt(options.getOrDefault("seed", "200"));
+        System.out.printf("Seeding %d certificates...%n", seed);
+        if (!generator.seed(seed)) {
+            System.err.println("Seeding failed: no certificate could be generated. Is the server running?");
+            System.exit(1);
+        }
+
+        String description = mode.equals("open")
+                ? String.format("open loop at %.0f req/s (max %d in flight)", rate, concurrency)
+                : String.format("closed loop, %d clients%s", concurrency,
+                        rate > 0 ? String.format(" paced to %.0f req/s", rate) : "");
+        System.out.printf("Running %s for %ds after %ds warmup, mix %s%n",
+                description, duration.getSeconds(), warmup.getSeconds(), mixSpec);
+
+        if (mode.equals("open")) {
+            generator.runOpenLoop(rate, concurrency, warmup, duration);
+        } else {
+            generator.runClosedLoop(concurrency, rate, expectedInterval.toNanos(), warmup, duration);
+        }
+        generator.report(duration, mode.equals("closed") && rate <= 0 && expectedInterval.isZero());
+    }
+
+    /**
+     * Issues certificates so verifications and downloads have something to fetch.
+     */
+    boolean seed(int count) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(16);
+        for (int i = 0; i < count; i++) {
+            inFlight.acquire();
+            execute(Workload.Operation.GENERATE).whenComplete((ok, error) -> inFlight.release());
+        }
+        inFlight.acquire(16);
+        return count == 0 || workload.issuedCount() > 0;
+    }
+
+    void runOpenLoop(double rate, int maxInFlight, Duration warmup, Duration duration) throws InterruptedException {
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        measureFromNanos = start + warmup.toNanos();
+        long end = measureFromNanos + duration.toNanos();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * period;
+            if (intended >= end) {
+                break;
+            }
+            sleepUntil(intended);
+            // Waiting here still counts: latency runs from the intended send time
+            inFlight.acquire();
+            Workload.Operation operation = workload.nextOperation();
+            long sent = System.nanoTime();
+            execute(operation).whenComplete((ok, error) -> {
+                record(operation, intended, sent, System.nanoTime(), error == null && ok, 0, true);
+                inFlight.release();
+            });
+        }
+        drain(inFlight, maxInFlight);
+    }
+
+    void runClosedLoop(int clients, double rate, long expectedIntervalNanos, Duration warmup, Duration duration)
+            throws InterruptedException {
+        long period = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        long start = System.nanoTime();
+        measureFromNanos = start + warmup.toNanos();
+        long end = measureFromNanos + duration.toNanos();
+        AtomicLong tickets = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread thread = new Thread(() -> {
+                while (true) {
+                    long intended;
+                    if (period > 0) {
+                        // Clients share one schedule, so a slow response delays only its own client
+                        intended = start + tickets.getAndIncrement() * period;
+                        if (intended >= end) {
+                            return;
+                        }
+                        sleepUntil(intended);
+                    } else {
+                        intended = System.nanoTime();
+                        if (intended >= end) {
+                            return;
+                        }
+                    }
+                    Workload.Operation operation = workload.nextOperation();
+                    long sent = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = execute(operation).join();
+                    } catch (RuntimeException e) {
+                        ok = false;
+                    }
+                    record(operation, intended, sent, System.nanoTime(), ok, expectedIntervalNanos, period > 0);
+                }
+            }, "load-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void drain(Semaphore inFlight, int permits) throws InterruptedException {
+        if (!inFlight.tryAcquire(permits, timeout.toMillis() + 5_000, TimeUnit.MILLISECONDS)) {
+            System.err.printf("%d request(s) still outstanding at the end of the run%n",
+                    permits - inFlight.availablePermits());
+        }
+    }
+
+    /**
+     * Sends one request; completes with whether the response counts as a success.
+     */
+    private CompletableFuture<Boolean> execute(Workload.Operation operation) {
+        HttpRequest.Builder request;
+        boolean missing = false;
+        switch (operation) {
+            case GENERATE:
+                request = HttpRequest.newBuilder(baseUri.resolve("/api/generate"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(workload.nextCertificateRequest()));
+                break;
+            case VERIFY: {
+                // Never-issued IDs must come back 404
+                missing = workload.nextVerifyMisses();
+                String id = missing ? UUID.randomUUID().toString() : workload.nextIssuedId();
+                request = HttpRequest.newBuilder(baseUri.resolve("/api/verify/" + id)).GET();
+                break;
+            }
+            case DOWNLOAD_PDF:
+            case DOWNLOAD_PNG: {
+                String format = operation == Workload.Operation.DOWNLOAD_PDF ? "pdf" : "png";
+                request = HttpRequest.newBuilder(
+                        baseUri.resolve("/api/download/" + workload.nextIssuedId() + "?format=" + format)).GET();
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+        request.timeout(timeout);
+        if (apiKey != null && !apiKey.isEmpty()) {
+            request.header("Authorization", "Bearer " + apiKey);
+        }
+
+        boolean expectNotFound = missing;
+        if (operation == Workload.Operation.GENERATE) {
+            return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> {
+                        if (response.statusCode() != 201) {
+                            return false;
+                        }
+                        workload.addIssued(JsonParser.parseString(response.body())
+                                .getAsJsonObject().get("id").getAsString());
+                        return true;
+                    })
+                    .exceptionally(error -> false);
+        }
+        // Bodies are read in full and dropped, so downloads are timed to the last byte
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> expectNotFound
+                        ? response.statusCode() == 404
+                        : response.statusCode() >= 200 && response.statusCode() < 400)
+                .exceptionally(error -> false);
+    }
+
+    private void record(Workload.Operation operation, long intended, long sent, long done, boolean ok,
+                        long expectedIntervalNanos, boolean paced) {
+        if (intended < measureFromNanos) {
+            return;
+        }
+        EndpointStats endpoint = stats.get(operation.endpoint);
+        endpoint.requests.increment();
+        if (!ok) {
+            endpoint.errors.increment();
+        }
+        if (paced) {
+            endpoint.corrected.recordNanos(done - intended);
+        } else {
+            endpoint.corrected.recordNanos(done - sent, expectedIntervalNanos);
+        }
+        endpoint.uncorrected.recordNanos(done - sent);
+    }
+
+    void report(Duration duration, boolean uncorrectable) {
+        double seconds = duration.toNanos() / 1e9;
+        System.out.println();
+        System.out.printf("%-10s %9s %9s %7s %7s", "endpoint", "requests", "req/s", "errors", "err%");
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %9s", "p" + formatPercentile(percentile));
+        }
+        System.out.printf(" %9s %12s%n", "max", "p99 uncorr.");
+
+        EndpointStats total = new EndpointStats();
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpoint = entry.getValue();
+            if (endpoint.requests.sum() == 0) {
+                continue;
+            }
+            printRow(entry.getKey(), endpoint, seconds);
+            total.requests.add(endpoint.requests.sum());
+            total.errors.add(endpoint.errors.sum());
+            total.corrected.add(endpoint.corrected);
+            total.uncorrected.add(endpoint.uncorrected);
+        }
+        printRow("total", total, seconds);
+        System.out.println();
+        System.out.println("Latencies in milliseconds, measured from each request's intended send time.");
+        if (uncorrectable) {
+            System.out.println("Unpaced closed loop: percentiles are not corrected for coordinated omission;"
+                    + " pass --rate or --expected-interval.");
+        }
+    }
+
+    private static void printRow(String name, EndpointStats endpoint, double seconds) {
+        long requests = endpoint.requests.sum();
+        long errors = endpoint.errors.sum();
+        System.out.printf("%-10s %9d %9.1f %7d %6.2f%%", name, requests, requests / seconds, errors,
+                requests == 0 ? 0.0 : 100.0 * errors / requests);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %9.2f", endpoint.corrected.percentileMicros(percentile) / 1000.0);
+        }
+        System.out.printf(" %9.2f %12.2f%n", endpoint.corrected.maxMicros() / 1000.0,
+                endpoint.uncorrected.percentileMicros(99) / 1000.0);
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            // Park for the bulk of the wait, spin the last stretch for an accurate send time
+            if (remaining > TimeUnit.MILLISECONDS.toNanos(2)) {
+                LockSupport.parkNanos(remaining - TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            } else if (i + 1 < args.length) {
+                options.put(arg.substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Parses {@code 500ms}, {@code 30s}, {@code 5m} or a plain number of seconds.
+     */
+    static Duration parseDuration(String value) {
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        if (text.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        if (text.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(text));
+    }
+
+    static final class EndpointStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyRecorder corrected = new LatencyRecorder();
+        final LatencyRecorder uncorrected = new LatencyRecorder();
+    }
+}
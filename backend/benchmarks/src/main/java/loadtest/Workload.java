@@ -0,0 +1,228 @@
+package loadtest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The request mix and the data behind it.
+ *
+ * Participant names, courses and issuers follow skewed distributions: a few
+ * introductory courses and large issuers account for most certificates, and
+ * names mix short and long, accented and non-Latin forms. Completion dates
+ * cluster at the end of the last semester. Verifications and downloads favour
+ * recently issued certificates, and a configurable share of verifications use
+ * IDs that were never issued, like mistyped URLs or scrapers.
+ */
+final class Workload {
+    enum Operation {
+        GENERATE("generate"), VERIFY("verify"), DOWNLOAD_PDF("download"), DOWNLOAD_PNG("download");
+
+        final String endpoint;
+
+        Operation(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    private static final String[] FIRST_NAMES = {
+            "Maria", "James", "Wei", "Fatima", "Olivia", "Mohammed", "Sofia", "Liam", "Aisha", "Noah",
+            "Priya", "Lucas", "Yuki", "Emma", "Carlos", "Chloé", "Mateo", "Zoë", "Arjun", "Hannah",
+            "José", "Ingrid", "Kwame", "Léa", "Dmitri", "Nguyễn", "Siobhán", "Björn", "Amara", "Jean-Baptiste",
+            "Anastasia", "Oluwaseun", "Maximilian", "Bartholomew", "李", "Ελένη", "Алексей", "محمد"
+    };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Garcia", "Chen", "Khan", "Müller", "Kim", "Nguyen", "Johnson", "Silva", "Patel",
+            "Rossi", "Kowalski", "Okafor", "Tanaka", "Dubois", "Andersson", "Hernández", "O'Brien", "Ivanova", "Cohen",
+            "van der Berg", "Papadopoulos", "Bălănescu", "Fernández-López", "Abernathy-Worthington",
+            "Wójcik", "Nakamura", "王", "Σταυρόπουλος", "Кузнецов", "عبدالله"
+    };
+    private static final String[] COURSES = {
+            "Introduction to Python Programming", "Data Science Fundamentals", "Web Development Bootcamp",
+            "Machine Learning Foundations", "Cloud Computing Essentials", "Project Management Professional",
+            "Digital Marketing Strategy", "Cybersecurity Basics", "UX Design Principles",
+            "Advanced SQL for Analysts", "Agile and Scrum in Practice", "Financial Accounting I",
+            "Distributed Systems Engineering", "Natural Language Processing with Transformers",
+            "Statistics for the Social Sciences", "Mobile App Development with Kotlin",
+            "Leadership and Organizational Behaviour", "Renewable Energy Systems",
+            "Introduction to Quantum Computing", "Ethics in Artificial Intelligence"
+    };
+    private static final String[] ISSUERS = {
+            "CertiAI Academy", "Northbridge University", "Open Learning Institute",
+            "Summit Technical College", "Global Skills Network", "École Supérieure d'Informatique"
+    };
+
+    private static final Zipf FIRST_NAME_RANK = new Zipf(FIRST_NAMES.length, 0.8);
+    private static final Zipf LAST_NAME_RANK = new Zipf(LAST_NAMES.length, 0.8);
+    private static final Zipf COURSE_RANK = new Zipf(COURSES.length, 1.1);
+    private static final Zipf ISSUER_RANK = new Zipf(ISSUERS.length, 1.3);
+
+    private final Operation[] operations;
+    private final double[] cumulativeWeights;
+    private final double missRatio;
+    private final LocalDate semesterEnd;
+
+    // Issued IDs as a ring; once full, the oldest are overwritten
+    private final AtomicReferenceArray<String> issued = new AtomicReferenceArray<>(1 << 20);
+    private final AtomicInteger issuedCount = new AtomicInteger();
+
+    Workload(Map<Operation, Double> mix, double missRatio, LocalDate semesterEnd) {
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new double[operations.length];
+        double sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += mix.get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Request mix has no weight");
+        }
+        this.missRatio = missRatio;
+        this.semesterEnd = semesterEnd;
+    }
+
+    /**
+     * Parses a mix such as {@code generate=5,verify=80,download=15}; downloads are
+     * split three to one between PDF and PNG unless given as {@code pdf} and {@code png}.
+     */
+    static Map<Operation, Double> parseMix(String spec) {
+        Map<Operation, Double> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] fields = part.trim().split("=");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            }
+            double weight = Double.parseDouble(fields[1].trim());
+            switch (fields[0].trim().toLowerCase(Locale.ROOT)) {
+                case "generate": mix.merge(Operation.GENERATE, weight, Double::sum); break;
+                case "verify": mix.merge(Operation.VERIFY, weight, Double::sum); break;
+                case "pdf": mix.merge(Operation.DOWNLOAD_PDF, weight, Double::sum); break;
+                case "png": mix.merge(Operation.DOWNLOAD_PNG, weight, Double::sum); break;
+                case "download":
+                    mix.merge(Operation.DOWNLOAD_PDF, weight * 0.75, Double::sum);
+                    mix.merge(Operation.DOWNLOAD_PNG, weight * 0.25, Double::sum);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation in mix: " + fields[0]);
+            }
+        }
+        return mix;
+    }
+
+    static List<String> endpoints(Map<Operation, Double> mix) {
+        List<String> endpoints = new ArrayList<>();
+        for (Operation operation : mix.keySet()) {
+            if (!endpoints.contains(operation.endpoint)) {
+                endpoints.add(operation.endpoint);
+            }
+        }
+        return endpoints;
+    }
+
+    Operation nextOperation() {
+        // Nothing to verify or download until something has been issued
+        if (issuedCount.get() == 0) {
+            return Operation.GENERATE;
+        }
+        double point = ThreadLocalRandom.current().nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    /**
+     * A generation request body, as compact JSON.
+     */
+    String nextCertificateRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder name = new StringBuilder(FIRST_NAMES[FIRST_NAME_RANK.next(random)]);
+        if (random.nextInt(5) == 0) {
+            name.append(' ').append(FIRST_NAMES[FIRST_NAME_RANK.next(random)]);
+        }
+        name.append(' ').append(LAST_NAMES[LAST_NAME_RANK.next(random)]);
+
+        // Most complete in the final two weeks of the semester, the rest during the year
+        LocalDate completion = random.nextInt(10) < 8
+                ? semesterEnd.minusDays((long) Math.min(120, -Math.log(1 - random.nextDouble()) * 5))
+                : semesterEnd.minusDays(random.nextInt(365));
+
+        return "{\"participantName\":" + quote(name.toString())
+                + ",\"courseName\":" + quote(COURSES[COURSE_RANK.next(random)])
+                + ",\"completionDate\":\"" + completion + "\""
+                + ",\"issuerName\":" + quote(ISSUERS[ISSUER_RANK.next(random)]) + "}";
+    }
+
+    void addIssued(String certificateId) {
+        int slot = issuedCount.getAndIncrement();
+        issued.set(slot & (issued.length() - 1), certificateId);
+    }
+
+    int issuedCount() {
+        return issuedCount.get();
+    }
+
+    /**
+     * Whether the next verification should use an ID that was never issued.
+     */
+    boolean nextVerifyMisses() {
+        return missRatio > 0 && ThreadLocalRandom.current().nextDouble() < missRatio;
+    }
+
+    /**
+     * A previously issued ID, newer ones more often.
+     */
+    String nextIssuedId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int count = issuedCount.get();
+        int available = Math.min(count, issued.length());
+        double u = random.nextDouble();
+        int age = (int) (available * u * u * u);
+        String id = issued.get((count - 1 - age) & (issued.length() - 1));
+        // A slot can still be empty for a moment after the count was bumped
+        return id != null ? id : issued.get(0);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Zipf-distributed ranks in {@code [0, n)} by inverse transform over precomputed weights.
+     */
+    static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+        }
+
+        int next(ThreadLocalRandom random) {
+            double point = random.nextDouble(cumulative[cumulative.length - 1]);
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] <= point) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
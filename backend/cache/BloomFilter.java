@@ -0,0 +1,182 @@
+package cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent Bloom filter over string keys.
+ *
+ * Answers "definitely absent" or "possibly present"; it never forgets a key, so
+ * a negative answer can skip a lookup entirely. Bits live in an
+ * {@link AtomicLongArray} and are set with compare-and-set, so adds and queries
+ * from any number of threads never block each other. The k bit positions come
+ * from two 64-bit hashes combined as {@code h1 + i * h2} (Kirsch–Mitzenmacher).
+ *
+ * The filter is sized for an expected number of keys; adding more still works
+ * but raises the false-positive rate, see {@link #expectedFalsePositiveRate()}.
+ */
+public final class BloomFilter {
+    private static final int SNAPSHOT_MAGIC = 0xB1007F11;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedKeys;
+    private final LongAdder insertions = new LongAdder();
+
+    private BloomFilter(int words, int hashCount, long expectedKeys) {
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * Long.SIZE;
+        this.hashCount = hashCount;
+        this.expectedKeys = expectedKeys;
+    }
+
+    /**
+     * Creates a filter holding {@code expectedKeys} keys at the given false-positive rate.
+     */
+    public static BloomFilter create(long expectedKeys, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        long keys = Math.max(1, expectedKeys);
+        double optimalBits = -keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long words = Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(optimalBits / Long.SIZE)));
+        int hashCount = (int) Math.max(1, Math.min(30, Math.round(words * Long.SIZE / (double) keys * Math.log(2))));
+        return new BloomFilter((int) words, hashCount, keys);
+    }
+
+    /**
+     * Adds the key. Returns {@code true} if any bit changed, i.e. the key was
+     * definitely not present before.
+     */
+    public boolean put(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        boolean changed = false;
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (combined & Long.MAX_VALUE) % bitCount;
+            changed |= setBit(bit);
+            combined += h2;
+        }
+        if (changed) {
+            insertions.increment();
+        }
+        return changed;
+    }
+
+    public boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (combined & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += h2;
+        }
+        return true;
+    }
+
+    /**
+     * Approximate number of distinct keys added.
+     */
+    public long approximateKeyCount() {
+        return insertions.sum();
+    }
+
+    /**
+     * False-positive rate at the current fill, {@code (1 - e^(-kn/m))^k}.
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashCount * (double) insertions.sum() / bitCount), hashCount);
+    }
+
+    /**
+     * The number of keys the filter was sized for.
+     */
+    public long expectedKeyCount() {
+        return expectedKeys;
+    }
+
+    public long bitSize() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Writes the filter. Concurrent adds may or may not be included.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(bits.length());
+        out.writeInt(hashCount);
+        out.writeLong(expectedKeys);
+        out.writeLong(insertions.sum());
+        for (int i = 0; i < bits.length(); i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo}.
+     *
+     * @throws IOException if the data is not a filter snapshot or is truncated
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a Bloom filter snapshot");
+        }
+        int words = in.readInt();
+        int hashCount = in.readInt();
+        if (words <= 0 || hashCount <= 0 || hashCount > 30) {
+            throw new IOException("Corrupt Bloom filter snapshot");
+        }
+        BloomFilter filter = new BloomFilter(words, hashCount, in.readLong());
+        filter.insertions.add(in.readLong());
+        for (int i = 0; i < words; i++) {
+            filter.bits.set(i, in.readLong());
+        }
+        return filter;
+    }
+
+    private boolean setBit(long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current = bits.get(word);
+        while ((current & mask) == 0) {
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+            current = bits.get(word);
+        }
+        return false;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 code units, finished with a murmur3 mix
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,28 @@
+package cache;
+
+/**
+ * Minimal cache abstraction so the eviction policy behind the certificate caches
+ * can be swapped without touching callers.
+ */
+public interface Cache<K, V> {
+    /**
+     * Returns the cached value, or {@code null} on a miss.
+     */
+    V get(K key);
+
+    void put(K key, V value);
+
+    void invalidate(K key);
+
+    /**
+     * Number of entries currently held.
+     */
+    long size();
+
+    /**
+     * Sum of the weights of all entries currently held.
+     */
+    long weightedSize();
+
+    CacheStats stats();
+}
@@ -0,0 +1,49 @@
+package cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-in-time snapshot of a cache's counters.
+ */
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+    private final long weightedSize;
+    private final long maximumWeight;
+
+    public CacheStats(long hits, long misses, long evictions, long size, long weightedSize, long maximumWeight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.weightedSize = weightedSize;
+        this.maximumWeight = maximumWeight;
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getEvictions() { return evictions; }
+    public long getSize() { return size; }
+    public long getWeightedSize() { return weightedSize; }
+    public long getMaximumWeight() { return maximumWeight; }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("hits", hits);
+        map.put("misses", misses);
+        map.put("hitRatio", getHitRatio());
+        map.put("evictions", evictions);
+        map.put("size", size);
+        map.put("weightedSize", weightedSize);
+        map.put("maximumWeight", maximumWeight);
+        return map;
+    }
+}
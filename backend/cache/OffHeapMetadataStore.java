@@ -0,0 +1,831 @@
+package cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Certificate metadata cache that keeps its records outside the Java heap.
+ *
+ * Records are appended to direct-buffer slabs, compactly encoded: varint
+ * lengths, UTF-8 text, dates as epoch days, course and issuer names as codes
+ * into interned dictionaries, the verification URL only when it differs from
+ * the standard one, and strong entity tags as their 16 raw bytes. The heap only
+ * holds the index, one {@code long} per slot of an open-addressing table, plus
+ * the dictionaries, so the collector has nothing per certificate to trace.
+ *
+ * Slabs form a ring; when it is full the oldest slab is dropped whole and its
+ * records leave the index. A hit on a record in the older half of the ring
+ * copies it to the current slab, so records that are still read survive the
+ * ring turning over while records written once and never read again do not,
+ * much like promotion out of the probation segment of a segmented LRU. Lookups
+ * return a {@link View}, a flyweight over the
+ * record that decodes fields on demand and can copy text straight out as UTF-8.
+ * A view keeps its slab reachable, so it stays valid even if the slab is
+ * evicted while the view is in use.
+ *
+ * Reads are optimistic and lock-free unless a write raced them; writes take a
+ * single lock.
+ */
+public final class OffHeapMetadataStore {
+    /**
+     * Text fields that a {@link View} can copy out without decoding.
+     */
+    public enum Text { CERTIFICATE_ID, PARTICIPANT_NAME, COURSE_NAME, ISSUER_NAME, REVOKED_AT }
+
+    /**
+     * Receives UTF-8 bytes from {@code source}, which must not be modified or retained.
+     */
+    @FunctionalInterface
+    public interface Utf8Sink {
+        void write(ByteBuffer source, int offset, int length);
+    }
+
+    // Index slots: 20-bit hash tag | 16-bit slab number + 1 | 28-bit offset; 0 is empty
+    private static final int OFFSET_BITS = 28;
+    private static final int SLAB_BITS = 16;
+    private static final int TAG_SHIFT = OFFSET_BITS + SLAB_BITS;
+    private static final int MAX_SLABS = (1 << SLAB_BITS) - 1;
+    private static final int MAX_DICTIONARY_ENTRIES = 65_536;
+    private static final int TAG_BYTES = 16;
+    // Idle encoders; callers are mostly short-lived virtual threads, which a per-thread encoder would not outlive
+    private static final BlockingQueue<Encoder> ENCODERS =
+            new ArrayBlockingQueue<>(Math.max(2, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private final int slabBytes;
+    private final ByteBuffer[] slabs;
+    private final int[] slabFill;
+    private final String urlPrefix;
+    private final String urlSuffix;
+    private final Dictionary courses = new Dictionary();
+    private final Dictionary issuers = new Dictionary();
+    private final StampedLock lock = new StampedLock();
+
+    // Guarded by lock
+    private long[] slots = new long[1024];
+    private int entries;
+    private int current = -1;
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+
+    /**
+     * @param urlPrefix verification URLs equal to {@code urlPrefix + id + urlSuffix}
+     *                  are not stored but rebuilt from the ID
+     */
+    public OffHeapMetadataStore(long maximumBytes, int slabBytes, String urlPrefix, String urlSuffix) {
+        if (slabBytes <= 0 || slabBytes > 1 << OFFSET_BITS) {
+            throw new IllegalArgumentException("Slab size must be between 1 and " + (1 << OFFSET_BITS) + ": " + slabBytes);
+        }
+        int slabCount = (int) Math.max(2, Math.min(MAX_SLABS, maximumBytes / slabBytes));
+        this.slabBytes = slabBytes;
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabFill = new int[slabCount];
+        this.urlPrefix = urlPrefix;
+        this.urlSuffix = urlSuffix;
+    }
+
+    /**
+     * Returns a view of the certificate's record, or {@code null} on a miss.
+     */
+    public View get(String id) {
+        long hash = hash(id);
+        long stamp = lock.tryOptimisticRead();
+        long location = findOptimistically(id, hash);
+        ByteBuffer slab = location == 0 ? null : slabs[slabOf(location)];
+        boolean aging = location != 0 && isAging(slabOf(location));
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                location = find(id, hash);
+                slab = location == 0 ? null : slabs[slabOf(location)];
+                aging = location != 0 && isAging(slabOf(location));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (location == 0) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (aging) {
+            View promoted = promote(id, hash, location);
+            if (promoted != null) {
+                return promoted;
+            }
+        }
+        return new View(this, slab, offsetOf(location));
+    }
+
+    /**
+     * Stores the certificate's metadata, replacing any earlier record for the ID,
+     * and returns a view of it. A record too large for a slab is not cached; the
+     * view is then backed by a heap buffer of its own.
+     */
+    public View put(String id, String participantName, String courseName, LocalDate completionDate,
+                    String issuerName, LocalDate issueDate, String verificationUrl,
+                    String pdfEtag, String pngEtag, String recordEtag, String revokedAt) {
+        Encoder encoder = ENCODERS.poll();
+        if (encoder == null) {
+            encoder = new Encoder();
+        }
+        byte[] record;
+        try {
+            encoder.reset();
+            encoder.text(id);
+            encoder.text(participantName);
+            encoder.dictionaryText(courses, courseName);
+            encoder.dictionaryText(issuers, issuerName);
+            encoder.varint(zigzag((int) completionDate.toEpochDay()));
+            encoder.varint(zigzag((int) issueDate.toEpochDay()));
+            if (verificationUrl.equals(urlPrefix + id + urlSuffix)) {
+                encoder.varint(0);
+            } else {
+                encoder.optionalText(verificationUrl);
+            }
+            encoder.tag(pdfEtag);
+            encoder.tag(pngEtag);
+            encoder.tag(recordEtag);
+            encoder.optionalText(revokedAt);
+            record = encoder.finish();
+        } finally {
+            ENCODERS.offer(encoder);
+        }
+
+        if (record.length > slabBytes) {
+            return new View(this, ByteBuffer.wrap(record), 0);
+        }
+
+        long hash = hash(id);
+        long stamp = lock.writeLock();
+        try {
+            int slab = slabWithRoom(record.length);
+            int offset = slabFill[slab];
+            slabs[slab].put(offset, record);
+            slabFill[slab] += record.length;
+            usedBytes += record.length;
+            insert(hash, location(hash, slab, offset), id);
+            return new View(this, slabs[slab], offset);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void invalidate(String id) {
+        long hash = hash(id);
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(id, hash);
+            if (slot >= 0) {
+                removeAt(slot);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Counters, with the record bytes in live slabs as the weighted size.
+     */
+    public CacheStats stats() {
+        long stamp = lock.readLock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries, usedBytes,
+                    (long) slabs.length * slabBytes);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(stats().toMap());
+        long stamp = lock.readLock();
+        try {
+            stats.put("indexBytes", (long) slots.length * Long.BYTES);
+            stats.put("slabsAllocated", Arrays.stream(slabs).filter(slab -> slab != null).count());
+            stats.put("promotions", promotions.sum());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stats.put("courseDictionary", courses.size());
+        stats.put("issuerDictionary", issuers.size());
+        return stats;
+    }
+
+    // Without the lock the table can be mid-update; anything found is only trusted once validated
+    private long findOptimistically(String id, long hash) {
+        try {
+            return find(id, hash);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // The record's location, or 0 on a miss
+    private long find(String id, long hash) {
+        long[] slots = this.slots;
+        int mask = slots.length - 1;
+        long tag = hash >>> TAG_SHIFT;
+        int slot = (int) hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long location = slots[slot];
+            if (location == 0) {
+                return 0;
+            }
+            if (location >>> TAG_SHIFT == tag) {
+                ByteBuffer slab = slabs[slabOf(location)];
+                if (slab != null && idEquals(slab, offsetOf(location), id)) {
+                    return location;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    // Whether the slab is in the older half of the ring, the half evicted next
+    private boolean isAging(int slab) {
+        return (current - slab + slabs.length) % slabs.length >= slabs.length / 2;
+    }
+
+    // Copies a record that was just hit to the current slab; the old copy stays behind as garbage.
+    // Returns null if the record was replaced, invalidated or already moved in the meantime.
+    private View promote(String id, long hash, long location) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(id, hash);
+            if (slot < 0 || slots[slot] != location) {
+                return null;
+            }
+            ByteBuffer source = slabs[slabOf(location)];
+            int offset = offsetOf(location);
+            int[] cursor = {offset};
+            int length = readVarint(source, cursor);
+            byte[] record = new byte[cursor[0] - offset + length];
+            source.get(offset, record);
+
+            // May evict the source slab, and the record's index entry with it; insert adds it back
+            int slab = slabWithRoom(record.length);
+            int target = slabFill[slab];
+            slabs[slab].put(target, record);
+            slabFill[slab] += record.length;
+            usedBytes += record.length;
+            insert(hash, location(hash, slab, target), id);
+            promotions.increment();
+            return new View(this, slabs[slab], target);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Must hold the write lock
+    private int slotOf(String id, long hash) {
+        int mask = slots.length - 1;
+        long tag = hash >>> TAG_SHIFT;
+        int slot = (int) hash & mask;
+        while (slots[slot] != 0) {
+            long location = slots[slot];
+            if (location >>> TAG_SHIFT == tag && idEquals(slabs[slabOf(location)], offsetOf(location), id)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Must hold the write lock
+    private void insert(long hash, long location, String id) {
+        int existing = slotOf(id, hash);
+        if (existing >= 0) {
+            slots[existing] = location; // the old record stays in its slab as garbage
+            return;
+        }
+        if ((entries + 1) * 4L > slots.length * 3L) {
+            resize(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        int slot = (int) hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = location;
+        entries++;
+    }
+
+    // Must hold the write lock. Backward-shift deletion, so the table needs no tombstones
+    private void removeAt(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        slots[hole] = 0;
+        entries--;
+        int next = (hole + 1) & mask;
+        while (slots[next] != 0) {
+            int home = (int) homeHash(slots[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                slots[next] = 0;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    // Must hold the write lock
+    private void resize(int capacity) {
+        long[] resized = new long[capacity];
+        int mask = capacity - 1;
+        for (long location : slots) {
+            if (location != 0) {
+                int slot = (int) homeHash(location) & mask;
+                while (resized[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                resized[slot] = location;
+            }
+        }
+        slots = resized;
+    }
+
+    // Must hold the write lock. Moves to the next slab when the current one is full, evicting what was there
+    private int slabWithRoom(int bytes) {
+        if (current >= 0 && slabFill[current] + bytes <= slabBytes) {
+            return current;
+        }
+        int next = (current + 1) % slabs.length;
+        if (slabs[next] != null) {
+            evict(next);
+        }
+        slabs[next] = ByteBuffer.allocateDirect(slabBytes);
+        slabFill[next] = 0;
+        current = next;
+        return next;
+    }
+
+    // Must hold the write lock
+    private void evict(int slab) {
+        ByteBuffer buffer = slabs[slab];
+        int offset = 0;
+        while (offset < slabFill[slab]) {
+            int[] cursor = {offset};
+            int length = readVarint(buffer, cursor);
+            long hash = hashUtf8(buffer, cursor);
+            long location = location(hash, slab, offset);
+            // Superseded records are no longer indexed
+            int mask = slots.length - 1;
+            int slot = (int) hash & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == location) {
+                    removeAt(slot);
+                    evictions.increment();
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            offset += varintSize(length) + length;
+        }
+        usedBytes -= slabFill[slab];
+        // Dropped rather than reused: views handed out earlier may still read it
+        slabs[slab] = null;
+        slabFill[slab] = 0;
+    }
+
+    private long homeHash(long location) {
+        int[] cursor = {offsetOf(location)};
+        ByteBuffer slab = slabs[slabOf(location)];
+        readVarint(slab, cursor);
+        return hashUtf8(slab, cursor);
+    }
+
+    private static long location(long hash, int slab, int offset) {
+        return (hash >>> TAG_SHIFT) << TAG_SHIFT | (long) (slab + 1) << OFFSET_BITS | offset;
+    }
+
+    private static int slabOf(long location) {
+        return (int) (location >>> OFFSET_BITS & ((1 << SLAB_BITS) - 1)) - 1;
+    }
+
+    private static int offsetOf(long location) {
+        return (int) (location & ((1 << OFFSET_BITS) - 1));
+    }
+
+    // Compares the record's ID with the string without decoding it
+    private static boolean idEquals(ByteBuffer slab, int offset, String id) {
+        int[] cursor = {offset};
+        readVarint(slab, cursor);
+        int length = readVarint(slab, cursor);
+        int start = cursor[0];
+        if (length == id.length()) {
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                char c = id.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                } else if (slab.get(start + i) != c) {
+                    return false;
+                }
+            }
+            if (ascii) {
+                return true;
+            }
+        }
+        byte[] expected = id.getBytes(StandardCharsets.UTF_8);
+        if (expected.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (slab.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes with a murmur3 finish; ASCII IDs are hashed without encoding
+    static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c >= 0x80) {
+                return hashBytes(id.getBytes(StandardCharsets.UTF_8));
+            }
+            hash = (hash ^ c) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long hashBytes(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Hashes the length-prefixed text at the cursor
+    private static long hashUtf8(ByteBuffer buffer, int[] cursor) {
+        int length = readVarint(buffer, cursor);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (buffer.get(cursor[0] + i) & 0xFF)) * 0x100000001b3L;
+        }
+        cursor[0] += length;
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    static int readVarint(ByteBuffer buffer, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        int position = cursor[0];
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0 && shift < 35);
+        cursor[0] = position;
+        return value;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unzigzag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Flyweight over one stored record. Offsets are resolved once; text is only
+     * decoded by the getters that return strings.
+     */
+    public static final class View {
+        private final OffHeapMetadataStore store;
+        private final ByteBuffer buffer;
+        private final int idOffset;
+        private final int idLength;
+        private final int nameOffset;
+        private final int nameLength;
+        private final ByteBuffer courseBuffer;
+        private final int courseOffset;
+        private final int courseLength;
+        private final ByteBuffer issuerBuffer;
+        private final int issuerOffset;
+        private final int issuerLength;
+        private final int completionEpochDay;
+        private final int issueEpochDay;
+        private final int urlOffset;
+        private final int urlLength; // -1 when derived from the ID
+        private final int tagsOffset;
+        private final int revokedOffset;
+        private final int revokedLength; // -1 when not revoked
+
+        View(OffHeapMetadataStore store, ByteBuffer buffer, int offset) {
+            this.store = store;
+            this.buffer = buffer;
+            int[] cursor = {offset};
+            readVarint(buffer, cursor);
+            idLength = readVarint(buffer, cursor);
+            idOffset = cursor[0];
+            cursor[0] += idLength;
+            nameLength = readVarint(buffer, cursor);
+            nameOffset = cursor[0];
+            cursor[0] += nameLength;
+
+            int course = readVarint(buffer, cursor);
+            if (course == 0) {
+                courseBuffer = buffer;
+                courseLength = readVarint(buffer, cursor);
+                courseOffset = cursor[0];
+                cursor[0] += courseLength;
+            } else {
+                courseBuffer = store.courses.bytes(course);
+                courseOffset = 0;
+                courseLength = courseBuffer.limit();
+            }
+            int issuer = readVarint(buffer, cursor);
+            if (issuer == 0) {
+                issuerBuffer = buffer;
+                issuerLength = readVarint(buffer, cursor);
+                issuerOffset = cursor[0];
+                cursor[0] += issuerLength;
+            } else {
+                issuerBuffer = store.issuers.bytes(issuer);
+                issuerOffset = 0;
+                issuerLength = issuerBuffer.limit();
+            }
+
+            completionEpochDay = unzigzag(readVarint(buffer, cursor));
+            issueEpochDay = unzigzag(readVarint(buffer, cursor));
+            urlLength = readVarint(buffer, cursor) - 1;
+            urlOffset = cursor[0];
+            cursor[0] += Math.max(0, urlLength);
+
+            tagsOffset = cursor[0];
+            for (int i = 0; i < 3; i++) {
+                int tag = readVarint(buffer, cursor);
+                cursor[0] += tag == 0 ? TAG_BYTES : tag - 1;
+            }
+            revokedLength = readVarint(buffer, cursor) - 1;
+            revokedOffset = cursor[0];
+        }
+
+        public String getCertificateId() {
+            return decode(buffer, idOffset, idLength);
+        }
+
+        public String getParticipantName() {
+            return decode(buffer, nameOffset, nameLength);
+        }
+
+        public String getCourseName() {
+            return decode(courseBuffer, courseOffset, courseLength);
+        }
+
+        public String getIssuerName() {
+            return decode(issuerBuffer, issuerOffset, issuerLength);
+        }
+
+        public int getCompletionEpochDay() {
+            return completionEpochDay;
+        }
+
+        public int getIssueEpochDay() {
+            return issueEpochDay;
+        }
+
+        public LocalDate getCompletionDate() {
+            return LocalDate.ofEpochDay(completionEpochDay);
+        }
+
+        public LocalDate getIssueDate() {
+            return LocalDate.ofEpochDay(issueEpochDay);
+        }
+
+        public String getVerificationUrl() {
+            return urlLength < 0 ? store.urlPrefix + getCertificateId() + store.urlSuffix
+                    : decode(buffer, urlOffset, urlLength);
+        }
+
+        public String getPdfEtag() {
+            return getEtag(0);
+        }
+
+        public String getPngEtag() {
+            return getEtag(1);
+        }
+
+        public String getRecordEtag() {
+            return getEtag(2);
+        }
+
+        // Tags are stored PDF, PNG, record
+        private String getEtag(int index) {
+            int[] cursor = {tagsOffset};
+            for (int i = 0; ; i++) {
+                int tag = readVarint(buffer, cursor);
+                int length = tag == 0 ? TAG_BYTES : tag - 1;
+                if (i == index) {
+                    if (tag != 0) {
+                        return length == 0 ? null : decode(buffer, cursor[0], length);
+                    }
+                    byte[] raw = new byte[TAG_BYTES];
+                    buffer.get(cursor[0], raw);
+                    return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(raw) + "\"";
+                }
+                cursor[0] += length;
+            }
+        }
+
+        public boolean isRevoked() {
+            return revokedLength >= 0;
+        }
+
+        public String getRevokedAt() {
+            return revokedLength < 0 ? null : decode(buffer, revokedOffset, revokedLength);
+        }
+
+        /**
+         * Passes the field's UTF-8 bytes to the sink; nothing for an absent {@code REVOKED_AT}.
+         */
+        public void writeUtf8(Text field, Utf8Sink sink) {
+            switch (field) {
+                case CERTIFICATE_ID: sink.write(buffer, idOffset, idLength); break;
+                case PARTICIPANT_NAME: sink.write(buffer, nameOffset, nameLength); break;
+                case COURSE_NAME: sink.write(courseBuffer, courseOffset, courseLength); break;
+                case ISSUER_NAME: sink.write(issuerBuffer, issuerOffset, issuerLength); break;
+                case REVOKED_AT:
+                    if (revokedLength >= 0) {
+                        sink.write(buffer, revokedOffset, revokedLength);
+                    }
+                    break;
+                default: throw new IllegalArgumentException(String.valueOf(field));
+            }
+        }
+    }
+
+    /**
+     * Interned strings, as UTF-8, numbered from 1. Codes are only handed out while
+     * the dictionary is below its limit; past it, callers store the text inline.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private volatile ByteBuffer[] entries = new ByteBuffer[16];
+
+        synchronized int codeFor(String value) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (codes.size() >= MAX_DICTIONARY_ENTRIES) {
+                return 0;
+            }
+            int next = codes.size() + 1;
+            ByteBuffer[] current = entries;
+            if (next > current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next - 1] = ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            entries = current;
+            codes.put(value, next);
+            return next;
+        }
+
+        ByteBuffer bytes(int code) {
+            return entries[code - 1];
+        }
+
+        synchronized int size() {
+            return codes.size();
+        }
+    }
+
+    /**
+     * Builds one record in a reusable buffer; idle encoders wait in a pool.
+     */
+    private static final class Encoder {
+        private byte[] bytes = new byte[512];
+        private int length;
+
+        void reset() {
+            length = 0;
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void text(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length);
+            raw(utf8);
+        }
+
+        // Length + 1, so 0 can mean absent
+        void optionalText(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1);
+            raw(utf8);
+        }
+
+        void dictionaryText(Dictionary dictionary, String value) {
+            int code = dictionary.codeFor(value);
+            varint(code);
+            if (code == 0) {
+                text(value);
+            }
+        }
+
+        // Strong tags of 16 hashed bytes are stored raw, anything else as text
+        void tag(String tag) {
+            if (tag != null && tag.length() == 24 && tag.charAt(0) == '"' && tag.charAt(23) == '"') {
+                try {
+                    byte[] raw = Base64.getUrlDecoder().decode(tag.substring(1, 23));
+                    if (raw.length == TAG_BYTES
+                            && Base64.getUrlEncoder().withoutPadding().encodeToString(raw).equals(tag.substring(1, 23))) {
+                        varint(0);
+                        raw(raw);
+                        return;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // not base64; stored as text
+                }
+            }
+            // Empty text for a missing tag; real tags are never empty
+            byte[] utf8 = tag == null ? new byte[0] : tag.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1);
+            raw(utf8);
+        }
+
+        // The record, prefixed with its length
+        byte[] finish() {
+            byte[] record = new byte[varintSize(length) + length];
+            int position = 0;
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                record[position++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            record[position++] = (byte) value;
+            System.arraycopy(bytes, 0, record, position, length);
+            return record;
+        }
+
+        private void raw(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
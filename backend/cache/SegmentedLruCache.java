@@ -0,0 +1,237 @@
+package cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Weight-bounded segmented-LRU cache.
+ *
+ * New entries land in a probationary segment and are promoted to a protected
+ * segment on their second hit, so a scan of one-off lookups (crawlers, typo'd
+ * IDs) can only evict other probationary entries. The total weight, not the entry
+ * count, is capped. The key space is split over independently locked shards to
+ * keep lock hold times short under concurrent access.
+ *
+ * Each shard gets an equal part of the weight budget, so an entry heavier than
+ * {@code maximumWeight / shardCount} is not cached at all: {@link #put} drops it
+ * and later lookups miss. Budgets meant for a few very large values need fewer
+ * shards.
+ */
+public class SegmentedLruCache<K, V> implements Cache<K, V> {
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Shard<K, V>[] shards;
+    private final Weigher<K, V> weigher;
+    private final long maximumWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SegmentedLruCache(long maximumWeight, Weigher<K, V> weigher) {
+        this(maximumWeight, weigher, defaultShardCount());
+    }
+
+    public SegmentedLruCache(long maximumWeight, Weigher<K, V> weigher, int shardCount) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+        }
+        int count = Integer.highestOneBit(Math.max(1, shardCount));
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.shards = newShards(count);
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard<>(Math.max(1, maximumWeight / count));
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        V value = shardFor(key).get(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Caches the value, unless it weighs more than one shard's share of the budget.
+     */
+    @Override
+    public void put(K key, V value) {
+        long weight = weigher.weigh(key, value);
+        evictions.add(shardFor(key).put(key, value, weight));
+    }
+
+    @Override
+    public void invalidate(K key) {
+        shardFor(key).remove(key);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Shard<K, V> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long weightedSize() {
+        long weight = 0;
+        for (Shard<K, V> shard : shards) {
+            weight += shard.weight;
+        }
+        return weight;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size(), weightedSize(), maximumWeight);
+    }
+
+    // Generic arrays cannot be created directly; the array never escapes and only ever holds Shard<K, V>
+    @SuppressWarnings("unchecked")
+    private static <K, V> Shard<K, V>[] newShards(int count) {
+        return (Shard<K, V>[]) new Shard<?, ?>[count];
+    }
+
+    private Shard<K, V> shardFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return shards[hash & (shards.length - 1)];
+    }
+
+    private static int defaultShardCount() {
+        return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Shard<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Both segments iterate from least to most recently used
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maximumWeight;
+        private final long maximumProtectedWeight;
+        private long protectedWeight;
+        private volatile long weight;
+
+        Shard(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            this.maximumProtectedWeight = (long) (maximumWeight * PROTECTED_RATIO);
+        }
+
+        V get(K key) {
+            lock.lock();
+            try {
+                Entry<V> entry = protectedSegment.get(key);
+                if (entry != null) {
+                    return entry.value;
+                }
+                entry = probation.remove(key);
+                if (entry == null) {
+                    return null;
+                }
+
+                // Second hit: promote, demoting protected LRU entries back to probation if needed
+                protectedSegment.put(key, entry);
+                protectedWeight += entry.weight;
+                while (protectedWeight > maximumProtectedWeight && protectedSegment.size() > 1) {
+                    Map.Entry<K, Entry<V>> eldest = removeEldest(protectedSegment);
+                    protectedWeight -= eldest.getValue().weight;
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+                return entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Inserts or replaces an entry and returns the number of entries evicted.
+         */
+        long put(K key, V value, long entryWeight) {
+            lock.lock();
+            try {
+                removeLocked(key);
+                if (entryWeight > maximumWeight) {
+                    return 0; // would evict everything else and still not fit
+                }
+
+                probation.put(key, new Entry<>(value, entryWeight));
+                weight += entryWeight;
+
+                long evicted = 0;
+                while (weight > maximumWeight) {
+                    Map.Entry<K, Entry<V>> victim;
+                    if (!probation.isEmpty()) {
+                        victim = removeEldest(probation);
+                    } else {
+                        victim = removeEldest(protectedSegment);
+                        protectedWeight -= victim.getValue().weight;
+                    }
+                    weight -= victim.getValue().weight;
+                    evicted++;
+                }
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key) {
+            lock.lock();
+            try {
+                removeLocked(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long size() {
+            lock.lock();
+            try {
+                return probation.size() + protectedSegment.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void removeLocked(K key) {
+            Entry<V> previous = probation.remove(key);
+            if (previous == null) {
+                previous = protectedSegment.remove(key);
+                if (previous != null) {
+                    protectedWeight -= previous.weight;
+                }
+            }
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+        }
+
+        private static <K, V> Map.Entry<K, Entry<V>> removeEldest(LinkedHashMap<K, Entry<V>> segment) {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = segment.entrySet().iterator();
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            Map.Entry<K, Entry<V>> copy = Map.entry(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            return copy;
+        }
+    }
+}
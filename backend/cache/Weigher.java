@@ -0,0 +1,9 @@
+package cache;
+
+/**
+ * Computes the weight of a cache entry, usually its approximate size in bytes.
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+    long weigh(K key, V value);
+}
@@ -1,10 +1,13 @@
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
-import java.io.File;
+import http.EntityTags;
+import http.RangeResponses;
+import render.RenderExecutor;
+import storage.ValueRegion;
+
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
 import java.net.URLDecoder;
 import java.util.HashMap;
 import java.util.Map;
@@ -12,7 +15,7 @@ import java.util.Map;
 public class DownloadHandler implements HttpHandler {
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        if ("GET".equals(exchange.getRequestMethod())) {
+        if ("GET".equals(exchange.getRequestMethod()) || "HEAD".equals(exchange.getRequestMethod())) {
             String path = exchange.getRequestURI().getPath();
             String certificateId = path.substring("/download/".length());
             
@@ -21,26 +24,31 @@ public class DownloadHandler implements HttpHandler {
             String format = params.getOrDefault("format", "pdf");
             
             try {
-                String filename = "certificates/" + certificateId + "." + format;
-                File file = new File(filename);
+                // Certificates are immutable: answer revalidations before opening the file
+                String etag = AdvancedCertificateGenerator.getCertificateEtag(certificateId, format);
+                if (EntityTags.handleConditional(exchange, etag, EntityTags.IMMUTABLE)) {
+                    return;
+                }
                 
-                if (file.exists()) {
-                    byte[] fileBytes = Files.readAllBytes(file.toPath());
-                    
+                try (ValueRegion region = AdvancedCertificateGenerator.openCertificateFile(certificateId, format)) {
+                    // Streamed from the certificate store (or a legacy file) instead of read into memory
                     exchange.getResponseHeaders().set("Content-Type", getContentType(format));
                     exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=certificate_" + certificateId + "." + format);
-                    exchange.sendResponseHeaders(200, fileBytes.length);
-                    
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(fileBytes);
-                    os.close();
-                } else {
-                    String response = "File not found";
-                    exchange.sendResponseHeaders(404, response.getBytes().length);
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
+                    RangeResponses.send(exchange, region);
                 }
+            } catch (AdvancedCertificateGenerator.CertificateNotFoundException | IllegalArgumentException e) {
+                String response = "File not found";
+                exchange.sendResponseHeaders(404, response.getBytes().length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(response.getBytes());
+                os.close();
+            } catch (RenderExecutor.RenderRejectedException e) {
+                String response = "Renderer busy, retry shortly";
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, response.getBytes().length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(response.getBytes());
+                os.close();
             } catch (Exception e) {
                 e.printStackTrace();
                 String errorResponse = "Failed to download file";
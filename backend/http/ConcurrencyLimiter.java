@@ -0,0 +1,175 @@
+package http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Adaptive concurrency limit for one endpoint.
+ *
+ * The limit follows the latency gradient: a slow-moving average of request
+ * latency is the baseline, and while recent latency stays near it the limit
+ * grows by roughly its square root; when recent latency rises above the
+ * baseline (requests are queueing somewhere) it shrinks proportionally. Failed
+ * requests cut it multiplicatively, as in AIMD. Requests beyond the limit, or
+ * arriving while the downstream backlog is full, are rejected immediately so
+ * clients can back off instead of timing out after the work was done.
+ */
+public class ConcurrencyLimiter {
+    private static final double LONG_RTT_WEIGHT = 0.05;
+    private static final double SMOOTHING = 0.2;
+    private static final long MIN_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final double DROP_DECREASE = 0.9;
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final IntSupplier backlog;
+    private final int maxBacklog;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    // Guarded by this
+    private double estimatedLimit;
+    private double longRttNanos;
+    private double shortRttNanos;
+    private long windowStart = System.nanoTime();
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        this(name, initialLimit, minLimit, maxLimit, () -> 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param backlog    depth of the queue this endpoint feeds (e.g. the render queue)
+     * @param maxBacklog backlog at which new requests are rejected regardless of the limit
+     */
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                              IntSupplier backlog, int maxBacklog) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.estimatedLimit = limit;
+        this.backlog = backlog;
+        this.maxBacklog = maxBacklog;
+    }
+
+    /**
+     * Returns a permit start time to pass to {@link #release}, or {@code -1} if the
+     * request must be rejected.
+     */
+    public long tryAcquire() {
+        if (backlog.getAsInt() >= maxBacklog) {
+            rejected.increment();
+            return -1;
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                return System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * @param succeeded {@code false} if the request failed or timed out, which
+     *                  shrinks the limit
+     */
+    public void release(long startNanos, boolean succeeded) {
+        long now = System.nanoTime();
+        int concurrency = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (!succeeded) {
+                dropped.increment();
+                estimatedLimit = Math.max(minLimit, estimatedLimit * DROP_DECREASE);
+                limit = (int) estimatedLimit;
+                return;
+            }
+
+            // Latency is averaged over a window so one slow request does not swing the limit
+            windowRttSum += now - startNanos;
+            windowSamples++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, concurrency);
+            if (now - windowStart < Math.max(MIN_WINDOW_NANOS, (long) (2 * shortRttNanos))) {
+                return;
+            }
+            double rtt = (double) windowRttSum / windowSamples;
+            int peakInFlight = windowMaxInFlight;
+            windowStart = now;
+            windowRttSum = 0;
+            windowSamples = 0;
+            windowMaxInFlight = 0;
+
+            shortRttNanos = rtt;
+            longRttNanos = longRttNanos == 0 ? rtt : longRttNanos + (rtt - longRttNanos) * LONG_RTT_WEIGHT;
+            // Pull the baseline back down quickly once a latency spike has passed
+            if (longRttNanos > 2 * shortRttNanos) {
+                longRttNanos *= 0.9;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / shortRttNanos));
+            // Only grow while the limit is actually being used
+            double headroom = peakInFlight * 2 >= estimatedLimit ? Math.sqrt(estimatedLimit) : 0;
+            double target = estimatedLimit * gradient + headroom;
+            estimatedLimit = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+            limit = (int) estimatedLimit;
+        }
+    }
+
+    /**
+     * Seconds after which a rejected client should retry: roughly the time the
+     * requests ahead of it need to drain at the current limit.
+     */
+    public long retryAfterSeconds() {
+        double rtt;
+        synchronized (this) {
+            rtt = shortRttNanos;
+        }
+        double waves = Math.max(1.0, (double) (inFlight.get() + backlog.getAsInt()) / Math.max(1, limit));
+        long seconds = (long) Math.ceil(rtt * waves / TimeUnit.SECONDS.toNanos(1));
+        return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", limit);
+        stats.put("inFlight", inFlight.get());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("dropped", dropped.sum());
+        synchronized (this) {
+            stats.put("latencyMillis", shortRttNanos / 1_000_000);
+            stats.put("baselineLatencyMillis", longRttNanos / 1_000_000);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,90 @@
+package http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Entity tags and conditional GET handling for certificate responses.
+ *
+ * Artifact tags are the digest of the stored bytes and are kept with the
+ * certificate's metadata, as is the record it is verified from, so a matching
+ * {@code If-None-Match} is answered once the metadata is found, before any
+ * artifact is read or response serialized.
+ */
+public final class EntityTags {
+    /** For artifacts, which are byte-for-byte identical for the life of the certificate. */
+    public static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    /** For representations that embed request-time data and must be revalidated. */
+    public static final String REVALIDATE = "no-cache";
+
+    private EntityTags() {
+    }
+
+    /**
+     * Strong tag over the given parts: the first 128 bits of their SHA-256, base64url.
+     */
+    public static String of(byte[]... parts) {
+        MessageDigest digest = sha256();
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        byte[] hash = Arrays.copyOf(digest.digest(), 16);
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+    }
+
+    public static String weak(String tag) {
+        return tag.startsWith("W/") ? tag : "W/" + tag;
+    }
+
+    /**
+     * Sets the tag and caching headers and, when the request's {@code If-None-Match}
+     * matches, sends {@code 304 Not Modified} and returns {@code true}.
+     */
+    public static boolean handleConditional(HttpExchange exchange, String tag, String cacheControl) throws IOException {
+        exchange.getResponseHeaders().set("ETag", tag);
+        exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+        if (!matches(exchange.getRequestHeaders().getFirst("If-None-Match"), tag)) {
+            return false;
+        }
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return true;
+    }
+
+    // If-None-Match uses the weak comparison (RFC 7232 section 3.2)
+    static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(tag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaque(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // If-Range uses the strong comparison (RFC 7233 section 3.2): weak tags never match
+    static boolean matchesStrongly(String candidate, String tag) {
+        return candidate != null && tag != null && !tag.startsWith("W/") && candidate.trim().equals(tag);
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
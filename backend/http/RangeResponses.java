@@ -0,0 +1,123 @@
+package http;
+
+import com.sun.net.httpserver.HttpExchange;
+import metrics.MetricsRegistry;
+import storage.ValueRegion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams a {@link ValueRegion} as an HTTP response body, honouring a single
+ * {@code Range: bytes=...} request header with {@code 206 Partial Content}.
+ *
+ * Multi-range requests are answered with the whole body, which RFC 7233 allows,
+ * since certificate clients only ever resume a single download. A range
+ * conditional on {@code If-Range} is only honoured when the validator is the
+ * response's own strong {@code ETag}; a weak tag, another tag or a date (these
+ * responses carry no {@code Last-Modified}) gets the whole body, so a resumed
+ * download never splices two different files together.
+ */
+public final class RangeResponses {
+    private static final LongAdder BYTES_SERVED = MetricsRegistry.shared().counter("certiai_http_response_bytes_total",
+            "Response body bytes written, after compression", "body", "artifact");
+
+    private RangeResponses() {
+    }
+
+    /**
+     * Sends the region (or the requested part of it) with {@code 200}, {@code 206}
+     * or {@code 416}. Content-Type, ETag and similar headers must already be set.
+     * Does not close the region.
+     */
+    public static void send(HttpExchange exchange, ValueRegion region) throws IOException {
+        long length = region.length();
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        ByteRange range = ifRange != null
+                && !EntityTags.matchesStrongly(ifRange, exchange.getResponseHeaders().getFirst("ETag"))
+                ? null
+                : ByteRange.parse(exchange.getRequestHeaders().getFirst("Range"), length);
+        if (range == ByteRange.UNSATISFIABLE) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + length);
+            exchange.sendResponseHeaders(416, -1);
+            exchange.close();
+            return;
+        }
+
+        long start = 0;
+        long count = length;
+        if (range != null) {
+            start = range.start;
+            count = range.end - range.start + 1;
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + range.start + "-" + range.end + "/" + length);
+        }
+
+        boolean head = "HEAD".equalsIgnoreCase(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(range != null ? 206 : 200, head ? -1 : count);
+        if (head) {
+            exchange.close();
+            return;
+        }
+        try (OutputStream os = exchange.getResponseBody()) {
+            WritableByteChannel channel = Channels.newChannel(os);
+            region.transferTo(start, count, channel);
+        }
+        BYTES_SERVED.add(count);
+    }
+
+    /**
+     * An inclusive byte range resolved against the full length.
+     */
+    static final class ByteRange {
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        final long start;
+        final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the requested range, {@code null} to send the whole body (no,
+         * malformed or multi-range header) or {@link #UNSATISFIABLE}.
+         */
+        static ByteRange parse(String header, long length) {
+            if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+                return null;
+            }
+            String spec = header.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    // Suffix range: the final N bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0 || length == 0) {
+                        return UNSATISFIABLE;
+                    }
+                    return new ByteRange(Math.max(0, length - suffix), length - 1);
+                }
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (start < 0 || start >= length) {
+                    return UNSATISFIABLE;
+                }
+                return end < start ? null : new ByteRange(start, end);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package http;
+
+import com.sun.net.httpserver.HttpExchange;
+import metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Sends buffered response bodies, compressed with gzip or deflate when the
+ * client's {@code Accept-Encoding} allows it.
+ *
+ * Bodies below the size threshold and content types that are already
+ * compressed (PNG, PDF, archives) are sent as-is, as is any body that would
+ * not get smaller. Deflaters come from a pool.
+ *
+ * Bodies produced incrementally can be written to {@link #open}. They are held
+ * in memory and sent like a buffered body while small, and switch to chunked
+ * streaming, compressed on the fly, once they outgrow the buffer.
+ */
+public class ResponseCompressor {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+    private static final int STREAMING_THRESHOLD = 64 * 1024;
+
+    // Process-wide, like the registry they are exported through; every compressor adds to the same totals
+    private static final LongAdder BYTES_SERVED = MetricsRegistry.shared().counter("certiai_http_response_bytes_total",
+            "Response body bytes written, after compression", "body", "buffered");
+    private static final LongAdder COMPRESSED_RESPONSES = MetricsRegistry.shared().counter(
+            "certiai_http_compression_responses_total", "Responses by content coding", "coding", "compressed");
+    private static final LongAdder UNCOMPRESSED_RESPONSES = MetricsRegistry.shared().counter(
+            "certiai_http_compression_responses_total", "Responses by content coding", "coding", "identity");
+    private static final LongAdder BYTES_BEFORE_COMPRESSION = MetricsRegistry.shared().counter(
+            "certiai_http_compression_bytes_total", "Bytes of compressed response bodies", "stage", "before");
+    private static final LongAdder BYTES_AFTER_COMPRESSION = MetricsRegistry.shared().counter(
+            "certiai_http_compression_bytes_total", "Bytes of compressed response bodies", "stage", "after");
+    // Thread CPU time where the JVM reports it, wall time where it does not (virtual threads report -1)
+    private static final LongAdder COMPRESSION_CPU_NANOS = new LongAdder();
+    private static final LongAdder COMPRESSION_WALL_NANOS = new LongAdder();
+
+    static {
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        metrics.gauge("certiai_http_compression_seconds", "Time spent compressing response bodies",
+                () -> COMPRESSION_CPU_NANOS.sum() / 1e9, "clock", "cpu");
+        metrics.gauge("certiai_http_compression_seconds", "Time spent compressing response bodies",
+                () -> COMPRESSION_WALL_NANOS.sum() / 1e9, "clock", "wall");
+    }
+
+    private final int minimumSize;
+    private final DeflaterPool gzipPool;
+    private final DeflaterPool deflatePool;
+
+    public ResponseCompressor(int minimumSize, int level) {
+        int poolSize = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        this.minimumSize = minimumSize;
+        this.gzipPool = new DeflaterPool(level, true, poolSize);
+        this.deflatePool = new DeflaterPool(level, false, poolSize);
+    }
+
+    /**
+     * Sends the body with the given status, negotiating the encoding. The
+     * Content-Type must already be set on the response headers.
+     */
+    public void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        send(exchange, status, body, body.length);
+    }
+
+    /**
+     * Sends the first {@code length} bytes of {@code body}.
+     */
+    public void send(HttpExchange exchange, int status, byte[] body, int length) throws IOException {
+        String encoding = length >= minimumSize ? negotiate(exchange) : null;
+
+        byte[] payload = body;
+        int payloadLength = length;
+        if (encoding != null) {
+            byte[] compressed = compress(body, length, encoding.equals("gzip"));
+            if (compressed.length < length) {
+                payload = compressed;
+                payloadLength = compressed.length;
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                COMPRESSED_RESPONSES.increment();
+                BYTES_BEFORE_COMPRESSION.add(length);
+                BYTES_AFTER_COMPRESSION.add(compressed.length);
+            } else {
+                encoding = null;
+            }
+        }
+        if (encoding == null) {
+            UNCOMPRESSED_RESPONSES.increment();
+        }
+
+        exchange.sendResponseHeaders(status, payloadLength == 0 ? -1 : payloadLength);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(payload, 0, payloadLength);
+        }
+        BYTES_SERVED.add(payloadLength);
+    }
+
+    /**
+     * Returns a stream for a body of unknown size, sent with the given status when
+     * the stream is closed or once it outgrows the in-memory buffer. The
+     * Content-Type must already be set; the stream must be closed.
+     */
+    public OutputStream open(HttpExchange exchange, int status) {
+        return new ResponseStream(exchange, status);
+    }
+
+    // Content coding to use for a compressible body, adding Vary; null for identity
+    private String negotiate(HttpExchange exchange) {
+        String contentType = exchange.getResponseHeaders().getFirst("Content-Type");
+        if (!isCompressible(contentType) || exchange.getResponseHeaders().containsKey("Content-Encoding")) {
+            return null;
+        }
+        exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        return negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    /**
+     * Returns the compression totals for the process, also exported to {@link MetricsRegistry}.
+     */
+    public Map<String, Object> getStats() {
+        long before = BYTES_BEFORE_COMPRESSION.sum();
+        long after = BYTES_AFTER_COMPRESSION.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("compressedResponses", COMPRESSED_RESPONSES.sum());
+        stats.put("uncompressedResponses", UNCOMPRESSED_RESPONSES.sum());
+        stats.put("bytesBeforeCompression", before);
+        stats.put("bytesAfterCompression", after);
+        stats.put("bytesSaved", before - after);
+        stats.put("compressionCpuMillis", COMPRESSION_CPU_NANOS.sum() / 1_000_000);
+        stats.put("compressionWallMillis", COMPRESSION_WALL_NANOS.sum() / 1_000_000);
+        return stats;
+    }
+
+    private byte[] compress(byte[] body, int length, boolean gzip) {
+        long startCpu = cpuNanos();
+        long startWall = System.nanoTime();
+        DeflaterPool pool = gzip ? gzipPool : deflatePool;
+        Deflater deflater = pool.acquire();
+        try {
+            // Deflated straight into the result, grown as needed; JSON usually shrinks to well under a quarter
+            byte[] out = new byte[Math.max(64, length / 4) + GZIP_HEADER.length + 8];
+            int position = 0;
+            if (gzip) {
+                System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+                position = GZIP_HEADER.length;
+            }
+            deflater.setInput(body, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (position == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                position += deflater.deflate(out, position, out.length - position);
+            }
+            if (gzip) {
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, length);
+                if (position + 8 > out.length) {
+                    out = Arrays.copyOf(out, position + 8);
+                }
+                writeIntLE(out, position, (int) crc.getValue());
+                writeIntLE(out, position + 4, length);
+                position += 8;
+            }
+            return position == out.length ? out : Arrays.copyOf(out, position);
+        } finally {
+            pool.release(deflater);
+            recordCompressionTime(startCpu, startWall);
+        }
+    }
+
+    // -1 when unavailable, for this JVM or for the current (virtual) thread
+    private static long cpuNanos() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static void recordCompressionTime(long startCpu, long startWall) {
+        long wall = System.nanoTime() - startWall;
+        long endCpu = startCpu >= 0 ? cpuNanos() : -1;
+        COMPRESSION_WALL_NANOS.add(wall);
+        COMPRESSION_CPU_NANOS.add(endCpu >= 0 ? endCpu - startCpu : wall);
+    }
+
+    private static void writeIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                || type.contains("javascript") || type.contains("ndjson");
+    }
+
+    /**
+     * Picks gzip or deflate by q-value, preferring gzip on a tie; {@code null} for identity.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = 0;
+        double deflate = 0;
+        double wildcard = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.trim().split(";");
+            String coding = fields[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            switch (coding) {
+                case "gzip": case "x-gzip": gzip = Math.max(gzip, q); break;
+                case "deflate": deflate = Math.max(deflate, q); break;
+                case "*": wildcard = q; break;
+                default: break;
+            }
+        }
+        if (wildcard >= 0) {
+            gzip = gzip == 0 && !acceptEncoding.contains("gzip") ? wildcard : gzip;
+            deflate = deflate == 0 && !acceptEncoding.contains("deflate") ? wildcard : deflate;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? "gzip" : "deflate";
+    }
+
+    /**
+     * Buffers the body until it is closed or reaches {@link #STREAMING_THRESHOLD};
+     * past that, sends chunked and compresses while writing.
+     */
+    private final class ResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final int status;
+        private byte[] buffer = new byte[1024];
+        private int count;
+        private OutputStream body; // set once streaming
+        private Deflater deflater;
+        private byte[] chunk;
+        private CRC32 crc;
+        private long bytesIn;
+        private long bytesOut;
+        private boolean closed;
+
+        ResponseStream(HttpExchange exchange, int status) {
+            this.exchange = exchange;
+            this.status = status;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Response already sent");
+            }
+            if (body == null) {
+                if (count + len <= STREAMING_THRESHOLD) {
+                    if (count + len > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.min(STREAMING_THRESHOLD, Math.max(count + len, buffer.length * 2)));
+                    }
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                startStreaming();
+                byte[] buffered = buffer;
+                buffer = null;
+                writeBody(buffered, 0, count);
+            }
+            writeBody(b, off, len);
+        }
+
+        private void startStreaming() throws IOException {
+            String encoding = negotiate(exchange);
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                boolean gzip = encoding.equals("gzip");
+                deflater = (gzip ? gzipPool : deflatePool).acquire();
+                chunk = new byte[8192];
+                crc = gzip ? new CRC32() : null;
+            }
+            exchange.sendResponseHeaders(status, 0);
+            body = exchange.getResponseBody();
+            if (crc != null) {
+                body.write(GZIP_HEADER);
+                bytesOut += GZIP_HEADER.length;
+            }
+        }
+
+        private void writeBody(byte[] b, int off, int len) throws IOException {
+            if (deflater == null) {
+                body.write(b, off, len);
+                bytesOut += len;
+                return;
+            }
+            long startCpu = cpuNanos();
+            long startWall = System.nanoTime();
+            if (crc != null) {
+                crc.update(b, off, len);
+            }
+            bytesIn += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                int length = deflater.deflate(chunk);
+                body.write(chunk, 0, length);
+                bytesOut += length;
+            }
+            recordCompressionTime(startCpu, startWall);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (body == null) {
+                send(exchange, status, buffer, count);
+                return;
+            }
+            try {
+                if (deflater != null) {
+                    long startCpu = cpuNanos();
+                    long startWall = System.nanoTime();
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int length = deflater.deflate(chunk);
+                        body.write(chunk, 0, length);
+                        bytesOut += length;
+                    }
+                    if (crc != null) {
+                        writeIntLE(body, (int) crc.getValue());
+                        writeIntLE(body, (int) bytesIn);
+                        bytesOut += 8;
+                    }
+                    recordCompressionTime(startCpu, startWall);
+                    COMPRESSED_RESPONSES.increment();
+                    BYTES_BEFORE_COMPRESSION.add(bytesIn);
+                    BYTES_AFTER_COMPRESSION.add(bytesOut);
+                } else {
+                    UNCOMPRESSED_RESPONSES.increment();
+                }
+                body.close();
+                BYTES_SERVED.add(bytesOut);
+            } finally {
+                if (deflater != null) {
+                    (crc != null ? gzipPool : deflatePool).release(deflater);
+                    deflater = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram, cheap enough to leave on in production.
+ *
+ * Recording is a short scan over the bucket bounds and two atomic increments:
+ * lock-free and allocation-free. Buckets hold per-bucket (not cumulative)
+ * counts; the cumulative view Prometheus expects is built at scrape time.
+ */
+public final class LatencyHistogram {
+    /** Upper bounds in seconds, from half a millisecond to ten seconds. */
+    static final double[] BOUNDS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    /** The {@code le} label of each bucket, including {@code +Inf}. */
+    static final String[] BUCKET_LABELS = new String[BOUNDS_SECONDS.length + 1];
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+            BUCKET_LABELS[i] = BigDecimal.valueOf(BOUNDS_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+        BUCKET_LABELS[BOUNDS_SECONDS.length] = "+Inf";
+    }
+
+    // One slot per bound plus the +Inf overflow
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        sumNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} (from {@link System#nanoTime()}).
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Cumulative bucket counts, the last one being the total count.
+     */
+    long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length()];
+        long running = 0;
+        for (int i = 0; i < counts.length; i++) {
+            running += buckets.get(i);
+            counts[i] = running;
+        }
+        return counts;
+    }
+
+    double sumSeconds() {
+        return sumNanos.get() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,132 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics, exported in the Prometheus text format (version 0.0.4).
+ *
+ * Metrics are registered once, typically in static initializers, and callers
+ * keep the returned histogram or counter; recording never goes through the
+ * registry. Gauges are read from their supplier at scrape time.
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry SHARED = new MetricsRegistry();
+
+    // Guarded by this; registration and scrapes only
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public static MetricsRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the histogram for the name and labels, registering it on first use.
+     *
+     * @param labels alternating label names and values
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, "histogram", labels, LatencyHistogram::new);
+    }
+
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) register(name, help, "counter", labels, LongAdder::new);
+    }
+
+    /**
+     * Registers a gauge read at scrape time. Re-registering replaces the supplier.
+     */
+    public synchronized void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").children.put(formatLabels(labels), value);
+    }
+
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                writeSample(out, family.name, child.getKey(), child.getValue());
+            }
+        }
+        return out.toString();
+    }
+
+    private void writeSample(StringBuilder out, String name, String labels, Object metric) {
+        if (metric instanceof LatencyHistogram) {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            long[] counts = histogram.cumulativeCounts();
+            String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+            for (int i = 0; i < counts.length; i++) {
+                out.append(name).append("_bucket").append(prefix)
+                        .append("le=\"").append(LatencyHistogram.BUCKET_LABELS[i]).append("\"} ")
+                        .append(counts[i]).append('\n');
+            }
+            out.append(name).append("_sum").append(labels).append(' ').append(histogram.sumSeconds()).append('\n');
+            out.append(name).append("_count").append(labels).append(' ').append(counts[counts.length - 1]).append('\n');
+        } else if (metric instanceof LongAdder) {
+            out.append(name).append(labels).append(' ').append(((LongAdder) metric).sum()).append('\n');
+        } else {
+            double value = ((DoubleSupplier) metric).getAsDouble();
+            out.append(name).append(labels).append(' ').append(formatDouble(value)).append('\n');
+        }
+    }
+
+    private synchronized Object register(String name, String help, String type, String[] labels,
+                                         Supplier<Object> factory) {
+        return family(name, help, type).children.computeIfAbsent(formatLabels(labels), key -> factory.get());
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> children = new LinkedHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
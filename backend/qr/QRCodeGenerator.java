@@ -1,23 +1,19 @@
 package qr;
 
-import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 import java.awt.image.BufferedImage;
 
 public class QRCodeGenerator {
+    private static final int QUIET_ZONE_SIZE = 4;
+
     public static BufferedImage generateQRCodeImage(String text, int width, int height) throws WriterException {
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, width, height);
+        BitMatrix modules = QRCodeRenderer.encodeModules(text, ErrorCorrectionLevel.L, null);
         
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                image.setRGB(x, y, bitMatrix.get(x, y) ? 0xFF000000 : 0xFFFFFFFF);
-            }
-        }
+        QRCodeRenderer.rasterize(modules, QUIET_ZONE_SIZE, image);
         return image;
     }
 }
\ No newline at end of file
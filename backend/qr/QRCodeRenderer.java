@@ -0,0 +1,184 @@
+package qr;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * QR rasterization engine shared by every QR code path.
+ *
+ * Codes are encoded to a module matrix (one bit per module, no quiet zone) and
+ * rasterized by writing whole rows straight into the image's data buffer: each
+ * module row is filled once, run by run, and then copied for the remaining pixel
+ * rows of the module. Layout matches {@code QRCodeWriter}: integer module scale,
+ * centered, with the requested quiet zone.
+ */
+public final class QRCodeRenderer {
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private final int width;
+    private final int height;
+    private final int quietZone;
+    private final ThreadLocal<BufferedImage> buffer;
+
+    /**
+     * @param imageType {@link BufferedImage#TYPE_INT_RGB}, {@link BufferedImage#TYPE_INT_ARGB}
+     *                  or {@link BufferedImage#TYPE_BYTE_BINARY}
+     */
+    public QRCodeRenderer(int width, int height, int quietZone, int imageType) {
+        this.width = width;
+        this.height = height;
+        this.quietZone = quietZone;
+        this.buffer = ThreadLocal.withInitial(() -> new BufferedImage(width, height, imageType));
+    }
+
+    /**
+     * Encodes text to its module matrix, one bit per module.
+     */
+    public static BitMatrix encodeModules(String text, ErrorCorrectionLevel level, String characterSet)
+            throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        if (characterSet != null) {
+            hints.put(EncodeHintType.CHARACTER_SET, characterSet);
+        }
+        ByteMatrix input = Encoder.encode(text, level, hints).getMatrix();
+
+        BitMatrix modules = new BitMatrix(input.getWidth(), input.getHeight());
+        for (int y = 0; y < input.getHeight(); y++) {
+            for (int x = 0; x < input.getWidth(); x++) {
+                if (input.get(x, y) == 1) {
+                    modules.set(x, y);
+                }
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Renders into this thread's reusable image. The returned image is
+     * overwritten by the next call on the same thread, so callers must finish
+     * with it (encode, draw, copy) before rendering again.
+     */
+    public BufferedImage render(BitMatrix modules) {
+        BufferedImage image = buffer.get();
+        rasterize(modules, quietZone, image);
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Rasterizes a module matrix into the whole of {@code target}, which must be a
+     * top-level (not sub-) image of a supported type.
+     */
+    public static void rasterize(BitMatrix modules, int quietZone, BufferedImage target) {
+        int inputWidth = modules.getWidth();
+        int inputHeight = modules.getHeight();
+        int outputWidth = target.getWidth();
+        int outputHeight = target.getHeight();
+        int multiple = Math.min(outputWidth / (inputWidth + quietZone * 2),
+                outputHeight / (inputHeight + quietZone * 2));
+        if (multiple < 1) {
+            throw new IllegalArgumentException("Image of " + outputWidth + "x" + outputHeight
+                    + " is too small for a " + inputWidth + "-module QR code");
+        }
+        int left = (outputWidth - inputWidth * multiple) / 2;
+        int top = (outputHeight - inputHeight * multiple) / 2;
+
+        WritableRaster raster = target.getRaster();
+        switch (target.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                rasterizeInt(modules, raster, multiple, left, top);
+                break;
+            case BufferedImage.TYPE_BYTE_BINARY:
+                rasterizePacked(modules, raster, multiple, left, top);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported image type: " + target.getType());
+        }
+    }
+
+    private static void rasterizeInt(BitMatrix modules, WritableRaster raster, int multiple, int left, int top) {
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int rowWidth = raster.getWidth();
+        Arrays.fill(data, WHITE);
+
+        for (int y = 0; y < modules.getHeight(); y++) {
+            int rowStart = (top + y * multiple) * stride;
+            for (int x = 0; x < modules.getWidth(); x++) {
+                if (modules.get(x, y)) {
+                    int from = rowStart + left + x * multiple;
+                    Arrays.fill(data, from, from + multiple, BLACK);
+                }
+            }
+            for (int r = 1; r < multiple; r++) {
+                System.arraycopy(data, rowStart, data, rowStart + r * stride, rowWidth);
+            }
+        }
+    }
+
+    private static void rasterizePacked(BitMatrix modules, WritableRaster raster, int multiple, int left, int top) {
+        // 1-bit packed: MSB is the leftmost pixel, index 0 is black, 1 is white
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        Arrays.fill(data, (byte) 0xFF);
+
+        for (int y = 0; y < modules.getHeight(); y++) {
+            int rowStart = (top + y * multiple) * stride;
+            int x = 0;
+            while (x < modules.getWidth()) {
+                if (!modules.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int runEnd = x + 1;
+                while (runEnd < modules.getWidth() && modules.get(runEnd, y)) {
+                    runEnd++;
+                }
+                clearBits(data, rowStart, left + x * multiple, left + runEnd * multiple);
+                x = runEnd;
+            }
+            for (int r = 1; r < multiple; r++) {
+                System.arraycopy(data, rowStart, data, rowStart + r * stride, stride);
+            }
+        }
+    }
+
+    // Clears pixel bits [from, to) of the packed row starting at rowStart
+    private static void clearBits(byte[] data, int rowStart, int from, int to) {
+        int firstByte = from >>> 3;
+        int lastByte = (to - 1) >>> 3;
+        int headMask = 0xFF >>> (from & 7);
+        int tailMask = 0xFF << (7 - ((to - 1) & 7));
+
+        if (firstByte == lastByte) {
+            data[rowStart + firstByte] &= (byte) ~(headMask & tailMask);
+            return;
+        }
+        data[rowStart + firstByte] &= (byte) ~headMask;
+        Arrays.fill(data, rowStart + firstByte + 1, rowStart + lastByte, (byte) 0);
+        data[rowStart + lastByte] &= (byte) ~tailMask;
+    }
+}
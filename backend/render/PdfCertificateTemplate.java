@@ -0,0 +1,74 @@
+package render;
+
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.IOException;
+
+/**
+ * Page layout of a PDF certificate: the media box and the static content
+ * (background, border, title and fixed captions) drawn under the dynamic fields.
+ *
+ * The static content is drawn inline on every page. Stamping it from a cached,
+ * pre-encoded form XObject measured no faster and allocated slightly more, since
+ * per-page cost is dominated by document setup and serialization.
+ */
+public final class PdfCertificateTemplate {
+    public static final PdfCertificateTemplate CLASSIC = new PdfCertificateTemplate(PDRectangle.LETTER);
+
+    private final PDRectangle mediaBox;
+
+    private PdfCertificateTemplate(PDRectangle mediaBox) {
+        this.mediaBox = mediaBox;
+    }
+
+    public PDRectangle getMediaBox() {
+        return mediaBox;
+    }
+
+    /**
+     * Draws the static content of the layout; draw it before the dynamic fields.
+     */
+    public void drawStaticContent(PDPageContentStream contentStream) throws IOException {
+        RenderAssets assets = RenderAssets.shared();
+        RenderAssets.Palette palette = assets.palette();
+
+        // Add background
+        contentStream.setNonStrokingColor(palette.getBackground());
+        contentStream.addRect(0, 0, mediaBox.getWidth(), mediaBox.getHeight());
+        contentStream.fill();
+
+        // Add border
+        contentStream.setStrokingColor(palette.getPrimary());
+        contentStream.setLineWidth(15);
+        contentStream.addRect(30, 30, mediaBox.getWidth() - 60, mediaBox.getHeight() - 60);
+        contentStream.stroke();
+
+        // Add title
+        contentStream.beginText();
+        setFont(contentStream, assets, RenderAssets.FontRole.TITLE);
+        contentStream.setNonStrokingColor(palette.getPrimary());
+        contentStream.newLineAtOffset(100, 650);
+        contentStream.showText("CERTIFICATE OF COMPLETION");
+        contentStream.endText();
+
+        // Add fixed captions
+        contentStream.beginText();
+        setFont(contentStream, assets, RenderAssets.FontRole.CAPTION);
+        contentStream.setNonStrokingColor(palette.getText());
+        contentStream.newLineAtOffset(100, 600);
+        contentStream.showText("This is to certify that");
+        contentStream.endText();
+
+        contentStream.beginText();
+        contentStream.setNonStrokingColor(palette.getEmphasis());
+        contentStream.newLineAtOffset(100, 500);
+        contentStream.showText("has successfully completed the course");
+        contentStream.endText();
+    }
+
+    public static void setFont(PDPageContentStream contentStream, RenderAssets assets, RenderAssets.FontRole role)
+            throws IOException {
+        contentStream.setFont(assets.pdfFont(role), role.getSize());
+    }
+}
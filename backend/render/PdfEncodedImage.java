@@ -0,0 +1,98 @@
+package render;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * An image encoded once as a PDF image XObject: the Flate-encoded samples, the
+ * stream dictionary and, for images with transparency, the soft mask.
+ *
+ * {@link LosslessFactory} compresses the pixels on every call, which for a logo
+ * drawn on every certificate repeats identical work per document. Each document
+ * here gets a stream wrapping the already encoded bytes instead.
+ */
+public final class PdfEncodedImage {
+    private final COSDictionary parameters;
+    private final byte[] encodedContent;
+    private final PdfEncodedImage softMask;
+
+    private PdfEncodedImage(COSStream stream) throws IOException {
+        this.parameters = new COSDictionary();
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+            COSName key = entry.getKey();
+            if (!key.equals(COSName.LENGTH) && !key.equals(COSName.SMASK)) {
+                parameters.setItem(key, copy(entry.getValue()));
+            }
+        }
+        try (InputStream in = stream.createRawInputStream()) {
+            this.encodedContent = in.readAllBytes();
+        }
+        COSBase mask = stream.getDictionaryObject(COSName.SMASK);
+        this.softMask = mask instanceof COSStream ? new PdfEncodedImage((COSStream) mask) : null;
+    }
+
+    /**
+     * Encodes the image losslessly, as {@link LosslessFactory#createFromImage} does.
+     */
+    public static PdfEncodedImage of(BufferedImage image) throws IOException {
+        try (PDDocument scratch = new PDDocument()) {
+            return new PdfEncodedImage(LosslessFactory.createFromImage(scratch, image).getCOSObject());
+        }
+    }
+
+    /**
+     * Creates the image XObject in the given document from the encoded bytes.
+     */
+    public PDImageXObject createXObject(PDDocument document) throws IOException {
+        return new PDImageXObject(new PDStream(createStream(document)), null);
+    }
+
+    private COSStream createStream(PDDocument document) throws IOException {
+        COSStream stream = document.getDocument().createCOSStream();
+        for (Map.Entry<COSName, COSBase> entry : parameters.entrySet()) {
+            stream.setItem(entry.getKey(), copy(entry.getValue()));
+        }
+        try (OutputStream out = stream.createRawOutputStream()) {
+            out.write(encodedContent);
+        }
+        if (softMask != null) {
+            stream.setItem(COSName.SMASK, softMask.createStream(document));
+        }
+        return stream;
+    }
+
+    // Dictionaries and arrays belong to one document; names and numbers are immutable and shared
+    private static COSBase copy(COSBase value) {
+        if (value instanceof COSStream) {
+            throw new IllegalArgumentException("Unexpected stream in image dictionary");
+        }
+        if (value instanceof COSDictionary) {
+            COSDictionary copy = new COSDictionary();
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+                copy.setItem(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof COSArray) {
+            COSArray copy = new COSArray();
+            for (COSBase element : (COSArray) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,52 @@
+package render;
+
+import com.google.zxing.common.BitMatrix;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+
+import java.awt.Color;
+import java.io.IOException;
+
+/**
+ * Draws QR codes into PDF content streams as vector rectangles, one per
+ * horizontal run of dark modules, so they stay sharp at any print size.
+ */
+public final class PdfQRCode {
+    private PdfQRCode() {
+    }
+
+    /**
+     * Draws the module matrix into the square at ({@code x}, {@code y}) (lower-left
+     * corner, PDF user space) on a white background with the given quiet zone.
+     */
+    public static void draw(PDPageContentStream contentStream, BitMatrix modules,
+                            float x, float y, float size, int quietZone) throws IOException {
+        int dimension = Math.max(modules.getWidth(), modules.getHeight()) + quietZone * 2;
+        float moduleSize = size / dimension;
+        float left = x + quietZone * moduleSize;
+        float top = y + size - quietZone * moduleSize;
+
+        contentStream.setNonStrokingColor(Color.WHITE);
+        contentStream.addRect(x, y, size, size);
+        contentStream.fill();
+
+        contentStream.setNonStrokingColor(Color.BLACK);
+        for (int row = 0; row < modules.getHeight(); row++) {
+            float rowBottom = top - (row + 1) * moduleSize;
+            int column = 0;
+            while (column < modules.getWidth()) {
+                if (!modules.get(column, row)) {
+                    column++;
+                    continue;
+                }
+                int runEnd = column + 1;
+                while (runEnd < modules.getWidth() && modules.get(runEnd, row)) {
+                    runEnd++;
+                }
+                contentStream.addRect(left + column * moduleSize, rowBottom,
+                        (runEnd - column) * moduleSize, moduleSize);
+                column = runEnd;
+            }
+        }
+        contentStream.fill();
+    }
+}
@@ -0,0 +1,131 @@
+package render;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Raster renderer for PNG certificates.
+ *
+ * The background, border, title and fixed captions are painted once into a
+ * background tile. Rendering a certificate copies the tile's pixels into a
+ * per-thread canvas with a single array copy and draws only the dynamic text and
+ * QR code, using fonts and colors from {@link RenderAssets}.
+ */
+public final class PngCertificateTemplate {
+    public static final PngCertificateTemplate CLASSIC = new PngCertificateTemplate(800, 600);
+
+    private final RenderAssets assets = RenderAssets.shared();
+    private final int width;
+    private final int height;
+    private final int[] backgroundPixels;
+    private final ThreadLocal<BufferedImage> canvas;
+    private final ThreadLocal<ImageWriter> pngWriter = ThreadLocal.withInitial(
+            () -> ImageIO.getImageWritersByFormatName("png").next());
+
+    private PngCertificateTemplate(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        BufferedImage background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = background.createGraphics();
+        try {
+            drawStaticContent(graphics, assets, width, height);
+        } finally {
+            graphics.dispose();
+        }
+        this.backgroundPixels = ((DataBufferInt) background.getRaster().getDataBuffer()).getData();
+        this.canvas = ThreadLocal.withInitial(() -> new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Renders a certificate and returns it PNG-encoded. The canvas is reused per
+     * thread, so nothing drawn here escapes the call except the encoded bytes.
+     */
+    public byte[] render(String participantName, String courseName, String completionDate,
+                         String issueDate, String issuerName, BufferedImage qrImage) throws IOException {
+        BufferedImage image = canvas.get();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(backgroundPixels, 0, pixels, 0, pixels.length);
+
+        RenderAssets.Palette palette = assets.palette();
+        Graphics2D graphics = image.createGraphics();
+        try {
+            // Draw participant name
+            graphics.setColor(palette.getEmphasis());
+            graphics.setFont(assets.font(RenderAssets.FontRole.NAME));
+            graphics.drawString(participantName, 100, 200);
+
+            // Draw course name
+            graphics.setColor(palette.getPrimary());
+            graphics.setFont(assets.font(RenderAssets.FontRole.COURSE));
+            graphics.drawString(courseName, 100, 280);
+
+            // Draw dates
+            graphics.setColor(palette.getText());
+            graphics.setFont(assets.font(RenderAssets.FontRole.DETAIL));
+            graphics.drawString("Completed on: " + completionDate, 100, 320);
+            graphics.drawString("Issued on: " + issueDate, 100, 340);
+
+            // Draw issuer
+            graphics.setFont(assets.font(RenderAssets.FontRole.ISSUER));
+            graphics.drawString("Issued by: " + issuerName, 100, 380);
+
+            // Draw QR code
+            graphics.drawImage(qrImage, 550, 400, 150, 150, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return encodePng(image);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private byte[] encodePng(BufferedImage image) throws IOException {
+        ImageWriter writer = pngWriter.get();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * 1024);
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(baos)) {
+            writer.setOutput(output);
+            writer.write(image);
+        } finally {
+            writer.reset();
+        }
+        return baos.toByteArray();
+    }
+
+    private static void drawStaticContent(Graphics2D graphics, RenderAssets assets, int width, int height) {
+        RenderAssets.Palette palette = assets.palette();
+
+        // Draw background
+        graphics.setColor(palette.getBackground());
+        graphics.fillRect(0, 0, width, height);
+
+        // Draw border
+        graphics.setColor(palette.getPrimary());
+        graphics.setStroke(new BasicStroke(10));
+        graphics.drawRect(20, 20, width - 40, height - 40);
+
+        // Draw title
+        graphics.setFont(assets.font(RenderAssets.FontRole.TITLE));
+        graphics.drawString("CERTIFICATE OF COMPLETION", 100, 100);
+
+        // Draw fixed captions
+        graphics.setColor(palette.getText());
+        graphics.setFont(assets.font(RenderAssets.FontRole.CAPTION));
+        graphics.drawString("This is to certify that", 100, 150);
+        graphics.drawString("has successfully completed the course", 100, 250);
+    }
+}
@@ -0,0 +1,227 @@
+package render;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of render assets shared by the PDF, PNG and QR paths: the logo, its
+ * pre-scaled copies and their PDF encodings, AWT and PDFBox fonts, and the color
+ * palette.
+ *
+ * Everything is resolved once, ideally by {@link #warm(int...)} at startup. Hits
+ * count lookups served from memory and misses count resource loads or scaling, so
+ * a miss counter that stops moving after warm-up shows the hot path does no I/O.
+ */
+public final class RenderAssets {
+    private static final Logger logger = Logger.getLogger(RenderAssets.class.getName());
+    private static final RenderAssets SHARED = new RenderAssets("/logo.png", Palette.CLASSIC);
+
+    private final String logoResource;
+    private final Palette palette;
+    private final Map<FontRole, Font> fonts = new EnumMap<>(FontRole.class);
+    private final Map<FontRole, PDFont> pdfFonts = new EnumMap<>(FontRole.class);
+    private final Map<Integer, Optional<BufferedImage>> scaledLogos = new ConcurrentHashMap<>();
+    private final Map<Integer, Optional<PdfEncodedImage>> pdfLogos = new ConcurrentHashMap<>();
+    private volatile Optional<BufferedImage> logo;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private RenderAssets(String logoResource, Palette palette) {
+        this.logoResource = logoResource;
+        this.palette = palette;
+
+        Font base = new Font("Helvetica", Font.PLAIN, 12);
+        for (FontRole role : FontRole.values()) {
+            fonts.put(role, base.deriveFont(role.getStyle(), role.getSize()));
+            pdfFonts.put(role, toStandardFont(role.getStyle()));
+        }
+    }
+
+    public static RenderAssets shared() {
+        return SHARED;
+    }
+
+    /**
+     * Loads the logo and builds its scaled copies for the given edge lengths, along
+     * with their PDF encodings.
+     */
+    public void warm(int... logoSizes) {
+        for (int size : logoSizes) {
+            scaledLogo(size);
+            pdfLogo(size);
+        }
+    }
+
+    public Palette palette() {
+        hits.increment();
+        return palette;
+    }
+
+    public Font font(FontRole role) {
+        hits.increment();
+        return fonts.get(role);
+    }
+
+    public PDFont pdfFont(FontRole role) {
+        hits.increment();
+        return pdfFonts.get(role);
+    }
+
+    /**
+     * The logo scaled to {@code size}x{@code size}, or {@code null} if no logo is bundled.
+     */
+    public BufferedImage scaledLogo(int size) {
+        Optional<BufferedImage> scaled = scaledLogos.get(size);
+        if (scaled != null) {
+            hits.increment();
+            return scaled.orElse(null);
+        }
+        return scaledLogos.computeIfAbsent(size, key -> {
+            misses.increment();
+            return logo().map(original -> scale(original, key));
+        }).orElse(null);
+    }
+
+    /**
+     * The scaled logo encoded as a PDF image, or {@code null} if no logo is bundled.
+     */
+    public PdfEncodedImage pdfLogo(int size) {
+        Optional<PdfEncodedImage> encoded = pdfLogos.get(size);
+        if (encoded != null) {
+            hits.increment();
+            return encoded.orElse(null);
+        }
+        return pdfLogos.computeIfAbsent(size, key -> {
+            misses.increment();
+            return Optional.ofNullable(scaledLogo(key)).map(RenderAssets::encode);
+        }).orElse(null);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Optional<BufferedImage> logo() {
+        Optional<BufferedImage> loaded = logo;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = logo;
+                if (loaded == null) {
+                    misses.increment();
+                    loaded = Optional.ofNullable(readLogo());
+                    logo = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private BufferedImage readLogo() {
+        try (InputStream in = RenderAssets.class.getResourceAsStream(logoResource)) {
+            if (in == null) {
+                logger.info("No logo resource found at " + logoResource + ", QR codes will be rendered without it");
+                return null;
+            }
+            return ImageIO.read(in);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not load logo " + logoResource, e);
+            return null;
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, int size) {
+        BufferedImage scaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, size, size, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static PdfEncodedImage encode(BufferedImage image) {
+        try {
+            return PdfEncodedImage.of(image);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode logo for PDF", e);
+        }
+    }
+
+    private static PDFont toStandardFont(int style) {
+        switch (style) {
+            case Font.BOLD: return PDType1Font.HELVETICA_BOLD;
+            case Font.ITALIC: return PDType1Font.HELVETICA_OBLIQUE;
+            default: return PDType1Font.HELVETICA;
+        }
+    }
+
+    public enum FontRole {
+        TITLE(Font.BOLD, 36),
+        CAPTION(Font.PLAIN, 14),
+        NAME(Font.BOLD, 28),
+        COURSE(Font.BOLD, 18),
+        DETAIL(Font.PLAIN, 12),
+        ISSUER(Font.ITALIC, 12);
+
+        private final int style;
+        private final float size;
+
+        FontRole(int style, float size) {
+            this.style = style;
+            this.size = size;
+        }
+
+        public int getStyle() { return style; }
+        public float getSize() { return size; }
+    }
+
+    public static final class Palette {
+        public static final Palette CLASSIC = new Palette(
+                new Color(240, 240, 240),
+                new Color(67, 97, 238),
+                Color.BLACK,
+                new Color(51, 51, 51));
+
+        private final Color background;
+        private final Color primary;
+        private final Color text;
+        private final Color emphasis;
+
+        public Palette(Color background, Color primary, Color text, Color emphasis) {
+            this.background = background;
+            this.primary = primary;
+            this.text = text;
+            this.emphasis = emphasis;
+        }
+
+        public Color getBackground() { return background; }
+        public Color getPrimary() { return primary; }
+        public Color getText() { return text; }
+        public Color getEmphasis() { return emphasis; }
+    }
+}
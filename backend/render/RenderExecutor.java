@@ -0,0 +1,106 @@
+package render;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size pool for CPU-bound rendering (QR, PDFBox, Java2D), kept apart from
+ * the request threads as a bulkhead: however many renders are waiting, request
+ * threads stay free for cheap calls like verification and health checks.
+ *
+ * The queue is bounded; when it is full, {@link #call} fails fast with a
+ * {@link RenderRejectedException} rather than letting callers pile up.
+ */
+public class RenderExecutor {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder rejected = new LongAdder();
+
+    public RenderExecutor(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "render-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Runs the task on the render pool and waits for its result.
+     */
+    public <T> T call(Callable<T> task) throws IOException {
+        return await(submit(task));
+    }
+
+    /**
+     * Queues the task, failing fast if the render queue is full.
+     */
+    public <T> Future<T> submit(Callable<T> task) throws RenderRejectedException {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new RenderRejectedException("Render queue is full (" + queueCapacity + " pending)");
+        }
+    }
+
+    public static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for render");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Render failed", cause);
+        }
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    /**
+     * Thrown when the render queue is full; callers should answer with 503.
+     */
+    public static class RenderRejectedException extends IOException {
+        public RenderRejectedException(String message) {
+            super(message);
+        }
+    }
+}
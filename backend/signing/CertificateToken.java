@@ -0,0 +1,213 @@
+package signing;
+
+import storage.CompactId;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The signed claims carried by a self-verifying QR code: certificate ID, a hash
+ * of the participant's name, course, issuer and dates.
+ *
+ * Binary layout, before the signature: a version byte, the signing key's ID as a
+ * varint, the certificate ID (a marker byte and 16 bytes for compact IDs, else
+ * length-prefixed UTF-8), the first 16 bytes of the name's SHA-256, course and
+ * issuer as length-prefixed UTF-8, and both dates as zigzag varint epoch days. The
+ * signature over those bytes follows. The text form is base64url without
+ * padding, so it can sit in a URL path.
+ *
+ * Only a hash of the name is signed, so a scanned code does not spell out who
+ * it belongs to; {@link #matchesName} checks a name presented alongside it.
+ */
+public final class CertificateToken {
+    static final int VERSION = 1;
+    static final int NAME_HASH_BYTES = 16;
+    private static final int COMPACT_ID = 0;
+    private static final int TEXT_ID = 1;
+
+    private final int keyId;
+    private final String certificateId;
+    private final byte[] nameHash;
+    private final String courseName;
+    private final String issuerName;
+    private final LocalDate completionDate;
+    private final LocalDate issueDate;
+
+    CertificateToken(int keyId, String certificateId, byte[] nameHash, String courseName, String issuerName,
+                     LocalDate completionDate, LocalDate issueDate) {
+        this.keyId = keyId;
+        this.certificateId = certificateId;
+        this.nameHash = nameHash;
+        this.courseName = courseName;
+        this.issuerName = issuerName;
+        this.completionDate = completionDate;
+        this.issueDate = issueDate;
+    }
+
+    public int getKeyId() { return keyId; }
+    public String getCertificateId() { return certificateId; }
+    public String getCourseName() { return courseName; }
+    public String getIssuerName() { return issuerName; }
+    public LocalDate getCompletionDate() { return completionDate; }
+    public LocalDate getIssueDate() { return issueDate; }
+
+    /**
+     * Whether the name hashes to the signed one; surrounding whitespace is ignored.
+     */
+    public boolean matchesName(String participantName) {
+        return MessageDigest.isEqual(nameHash, hashName(participantName));
+    }
+
+    static byte[] hashName(String participantName) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(participantName.trim().getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(digest, NAME_HASH_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * The bytes the signature covers.
+     */
+    byte[] encodeClaims() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(VERSION);
+        writeVarint(out, keyId);
+        CompactId compact = CompactId.parse(certificateId);
+        if (compact != null) {
+            byte[] binary = new byte[CompactId.BINARY_LENGTH];
+            compact.writeTo(binary, 0);
+            out.write(COMPACT_ID);
+            out.writeBytes(binary);
+        } else {
+            out.write(TEXT_ID);
+            writeText(out, certificateId);
+        }
+        out.writeBytes(nameHash);
+        writeText(out, courseName);
+        writeText(out, issuerName);
+        writeVarint(out, zigzag((int) completionDate.toEpochDay()));
+        writeVarint(out, zigzag((int) issueDate.toEpochDay()));
+        return out.toByteArray();
+    }
+
+    /**
+     * Splits a decoded token into its claims; {@code claimsLength} is set on the
+     * returned reader so the caller knows where the signature starts.
+     *
+     * @throws InvalidTokenException if the bytes are not a token of a known version
+     */
+    static Reader decodeClaims(byte[] token) throws InvalidTokenException {
+        Reader reader = new Reader(token);
+        try {
+            if (reader.readByte() != VERSION) {
+                throw new InvalidTokenException("Unsupported token version");
+            }
+            int keyId = reader.readVarint();
+            String certificateId;
+            int idKind = reader.readByte();
+            if (idKind == COMPACT_ID) {
+                certificateId = CompactId.fromBytes(reader.readBytes(CompactId.BINARY_LENGTH), 0).toString();
+            } else if (idKind == TEXT_ID) {
+                certificateId = reader.readText();
+            } else {
+                throw new InvalidTokenException("Malformed certificate ID");
+            }
+            byte[] nameHash = reader.readBytes(NAME_HASH_BYTES);
+            String courseName = reader.readText();
+            String issuerName = reader.readText();
+            LocalDate completionDate = LocalDate.ofEpochDay(unzigzag(reader.readVarint()));
+            LocalDate issueDate = LocalDate.ofEpochDay(unzigzag(reader.readVarint()));
+            reader.token = new CertificateToken(keyId, certificateId, nameHash, courseName, issuerName,
+                    completionDate, issueDate);
+            reader.claimsLength = reader.position;
+            return reader;
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new InvalidTokenException("Truncated token");
+        } catch (DateTimeException e) {
+            throw new InvalidTokenException("Malformed date");
+        }
+    }
+
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf8.length);
+        out.writeBytes(utf8);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unzigzag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    static final class Reader {
+        private final byte[] bytes;
+        private int position;
+        CertificateToken token;
+        int claimsLength;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarint() throws InvalidTokenException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new InvalidTokenException("Malformed varint");
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || length > bytes.length - position) {
+                throw new ArrayIndexOutOfBoundsException(length);
+            }
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        String readText() throws InvalidTokenException {
+            return new String(readBytes(readVarint()), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The token is malformed, signed by an unknown key or carries a bad signature.
+     */
+    public static class InvalidTokenException extends Exception {
+        public InvalidTokenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package signing;
+
+import storage.CompactId;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keys that sign and verify {@link CertificateToken}s, kept as files in one
+ * directory: {@code <id>.pub} holds the X.509-encoded public key and
+ * {@code <id>.key}, where present, the PKCS#8 private key.
+ *
+ * The key with the highest ID and a private key signs. Once it is older than
+ * the rotation period the next signature first creates a new key with the next
+ * ID. Old public keys stay, so every token issued remains verifiable; old
+ * private keys are never used again and can be removed. A node that should
+ * only verify needs nothing but the {@code .pub} files, and nodes sharing the
+ * directory pick up each other's rotations: an unknown key ID triggers a reload.
+ *
+ * Ed25519 is the default; ECDSA uses P-256 with fixed-length signatures.
+ * Signing and verification borrow a {@link Signature} from a small pool and take
+ * no other locks, except to rotate or reload keys.
+ */
+public final class TokenKeyRing {
+    private static final Logger logger = Logger.getLogger(TokenKeyRing.class.getName());
+    private static final Base64.Encoder TEXT = Base64.getUrlEncoder().withoutPadding();
+    private static final int MAX_TOKEN_LENGTH = 2048;
+    // Ed25519, and ECDSA P-256 in P1363 form
+    private static final int SIGNATURE_BYTES = 64;
+    // The longest key ID and dates a token can carry, for checking lengths before anything is signed
+    private static final int LONGEST_KEY_ID = Integer.MAX_VALUE;
+    private static final LocalDate LONGEST_DATE = LocalDate.of(-999_999, 1, 1);
+    private static final long RELOAD_INTERVAL_NANOS = 1_000_000_000L;
+    // Idle Signature instances by algorithm; requests run on virtual threads, so a per-thread cache would not last
+    private static final Map<String, BlockingQueue<Signature>> SIGNATURES = new ConcurrentHashMap<>();
+    private static final int SIGNATURE_POOL_SIZE = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final Path directory;
+    private final boolean ecdsa;
+    private final Duration rotationPeriod;
+    private final Map<Integer, TokenKey> keys = new ConcurrentHashMap<>();
+    private volatile TokenKey active;
+    private volatile long lastReload;
+
+    private TokenKeyRing(Path directory, boolean ecdsa, Duration rotationPeriod) {
+        this.directory = directory;
+        this.ecdsa = ecdsa;
+        this.rotationPeriod = rotationPeriod;
+    }
+
+    /**
+     * Loads the keys in {@code directory}, which need not exist until the first
+     * signature.
+     *
+     * @param algorithm     {@code Ed25519} or {@code ECDSA}, for keys this ring creates
+     * @param rotationPeriod age at which the signing key is replaced; zero never rotates
+     */
+    public static TokenKeyRing open(Path directory, String algorithm, Duration rotationPeriod) throws IOException {
+        boolean ecdsa;
+        if ("Ed25519".equalsIgnoreCase(algorithm)) {
+            ecdsa = false;
+        } else if ("ECDSA".equalsIgnoreCase(algorithm)) {
+            ecdsa = true;
+        } else {
+            throw new IllegalArgumentException("Unsupported token algorithm: " + algorithm);
+        }
+        TokenKeyRing ring = new TokenKeyRing(directory, ecdsa, rotationPeriod);
+        ring.reload();
+        return ring;
+    }
+
+    /**
+     * Signs the certificate's claims with the current key, rotating it first if due,
+     * and returns the token's text form.
+     *
+     * @throws IllegalArgumentException if the token would be longer than {@link #verify} accepts
+     */
+    public String sign(String certificateId, String participantName, String courseName, String issuerName,
+                       LocalDate completionDate, LocalDate issueDate) throws IOException, GeneralSecurityException {
+        TokenKey key = signingKey();
+        CertificateToken token = new CertificateToken(key.id, certificateId,
+                CertificateToken.hashName(participantName), courseName, issuerName, completionDate, issueDate);
+        byte[] claims = token.encodeClaims();
+        checkLength(claims);
+        Signature signature = acquireSignature(key.signatureAlgorithm);
+        byte[] signed;
+        try {
+            signature.initSign(key.privateKey);
+            signature.update(claims);
+            signed = signature.sign();
+        } finally {
+            releaseSignature(key.signatureAlgorithm, signature);
+        }
+        byte[] encoded = new byte[claims.length + signed.length];
+        System.arraycopy(claims, 0, encoded, 0, claims.length);
+        System.arraycopy(signed, 0, encoded, claims.length, signed.length);
+        return TEXT.encodeToString(encoded);
+    }
+
+    /**
+     * Rejects course and issuer names that would make a token for a newly issued
+     * certificate longer than {@link #verify} accepts, so a request can be turned
+     * away before a certificate is issued for it.
+     *
+     * @throws IllegalArgumentException if the names are too long for a token
+     */
+    public static void checkClaimLengths(String courseName, String issuerName) {
+        CertificateToken longest = new CertificateToken(LONGEST_KEY_ID, CompactId.next(),
+                CertificateToken.hashName(""), courseName, issuerName, LONGEST_DATE, LONGEST_DATE);
+        checkLength(longest.encodeClaims());
+    }
+
+    private static void checkLength(byte[] claims) {
+        // Unpadded base64
+        long textLength = (((long) claims.length + SIGNATURE_BYTES) * 4 + 2) / 3;
+        if (textLength > MAX_TOKEN_LENGTH) {
+            throw new IllegalArgumentException("Course and issuer names are too long for a signed token ("
+                    + textLength + " of at most " + MAX_TOKEN_LENGTH + " characters)");
+        }
+    }
+
+    /**
+     * Checks the token's signature against its key and returns the claims.
+     *
+     * @throws CertificateToken.InvalidTokenException if the token is malformed, its
+     *         key is unknown or the signature does not match
+     */
+    public CertificateToken verify(String text) throws CertificateToken.InvalidTokenException {
+        if (text == null || text.isEmpty() || text.length() > MAX_TOKEN_LENGTH) {
+            throw new CertificateToken.InvalidTokenException("Malformed token");
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(text);
+        } catch (IllegalArgumentException e) {
+            throw new CertificateToken.InvalidTokenException("Malformed token");
+        }
+        CertificateToken.Reader reader = CertificateToken.decodeClaims(bytes);
+        CertificateToken token = reader.token;
+        TokenKey key = keys.get(token.getKeyId());
+        if (key == null && reloadIfStale()) {
+            key = keys.get(token.getKeyId());
+        }
+        if (key == null) {
+            throw new CertificateToken.InvalidTokenException("Unknown signing key " + token.getKeyId());
+        }
+        Signature signature = null;
+        try {
+            signature = acquireSignature(key.signatureAlgorithm);
+            signature.initVerify(key.publicKey);
+            signature.update(bytes, 0, reader.claimsLength);
+            if (!signature.verify(bytes, reader.claimsLength, bytes.length - reader.claimsLength)) {
+                throw new CertificateToken.InvalidTokenException("Signature does not match");
+            }
+        } catch (SignatureException e) {
+            throw new CertificateToken.InvalidTokenException("Signature does not match");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Token key " + key.id + " cannot verify", e);
+        } finally {
+            if (signature != null) {
+                releaseSignature(key.signatureAlgorithm, signature);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * All known keys, oldest first, for publishing to offline verifiers.
+     */
+    public List<TokenKey> getKeys() {
+        List<TokenKey> all = new ArrayList<>(keys.values());
+        all.sort(Comparator.comparingInt(TokenKey::getId));
+        return all;
+    }
+
+    /**
+     * ID of the key new tokens are signed with, or -1 while no private key is present.
+     */
+    public int getActiveKeyId() {
+        TokenKey key = active;
+        return key == null ? -1 : key.id;
+    }
+
+    private TokenKey signingKey() throws IOException, GeneralSecurityException {
+        TokenKey key = active;
+        if (key != null && !isDue(key)) {
+            return key;
+        }
+        synchronized (this) {
+            // Another node sharing the directory may already have rotated
+            reload();
+            while (active == null || isDue(active)) {
+                if (createKey()) {
+                    reload();
+                    logger.info("Created token signing key " + active.id);
+                } else {
+                    reload(); // lost the race for this ID to another node
+                }
+            }
+            return active;
+        }
+    }
+
+    private boolean isDue(TokenKey key) {
+        return !rotationPeriod.isZero() && key.createdAt.plus(rotationPeriod).isBefore(Instant.now());
+    }
+
+    // Claims the next ID by linking its public key into place, which fails if another node got there first
+    private boolean createKey() throws IOException, GeneralSecurityException {
+        KeyPair pair;
+        if (ecdsa) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            pair = generator.generateKeyPair();
+        } else {
+            pair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        }
+        int id = keys.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        Files.createDirectories(directory);
+        Path privateTemp = createKeyFile("rw-------");
+        Path publicTemp = createKeyFile("rw-r--r--");
+        try {
+            Files.write(privateTemp, pair.getPrivate().getEncoded());
+            Files.write(publicTemp, pair.getPublic().getEncoded());
+            try {
+                // Unlike a rename, a link never replaces an existing file
+                Files.createLink(directory.resolve(id + ".pub"), publicTemp);
+            } catch (FileAlreadyExistsException e) {
+                return false;
+            }
+            Files.move(privateTemp, directory.resolve(id + ".key"), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(publicTemp);
+            Files.deleteIfExists(privateTemp);
+        }
+    }
+
+    // Permissions only apply where the file system has POSIX ones
+    private Path createKeyFile(String permissions) throws IOException {
+        try {
+            return Files.createTempFile(directory, "key", ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions)));
+        } catch (UnsupportedOperationException e) {
+            return Files.createTempFile(directory, "key", ".tmp");
+        }
+    }
+
+    private boolean reloadIfStale() {
+        if (System.nanoTime() - lastReload < RELOAD_INTERVAL_NANOS) {
+            return false;
+        }
+        try {
+            reload();
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to reload token keys from " + directory, e);
+            return false;
+        }
+    }
+
+    private synchronized void reload() throws IOException {
+        lastReload = System.nanoTime();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        TokenKey newest = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.pub")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int id;
+                try {
+                    id = Integer.parseInt(name.substring(0, name.length() - ".pub".length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                TokenKey key = keys.get(id);
+                if (key == null || key.privateKey == null && Files.exists(directory.resolve(id + ".key"))) {
+                    try {
+                        key = readKey(id, file);
+                    } catch (IOException | GeneralSecurityException e) {
+                        logger.log(Level.WARNING, "Skipping unreadable token key " + file, e);
+                        continue;
+                    }
+                    keys.put(id, key);
+                }
+                if (key.privateKey != null && (newest == null || key.id > newest.id)) {
+                    newest = key;
+                }
+            }
+        }
+        if (newest != null) {
+            active = newest;
+        }
+    }
+
+    private TokenKey readKey(int id, Path publicFile) throws IOException, GeneralSecurityException {
+        byte[] encodedPublic = Files.readAllBytes(publicFile);
+        String keyAlgorithm = keyAlgorithm(encodedPublic);
+        KeyFactory factory = KeyFactory.getInstance(keyAlgorithm);
+        PublicKey publicKey = factory.generatePublic(new X509EncodedKeySpec(encodedPublic));
+        PrivateKey privateKey = null;
+        Path privateFile = directory.resolve(id + ".key");
+        if (Files.exists(privateFile)) {
+            privateKey = factory.generatePrivate(new PKCS8EncodedKeySpec(Files.readAllBytes(privateFile)));
+        }
+        Instant createdAt = Files.getLastModifiedTime(publicFile).toInstant();
+        return new TokenKey(id, keyAlgorithm.equals("EC") ? "SHA256withECDSAinP1363Format" : "Ed25519",
+                publicKey, privateKey, createdAt);
+    }
+
+    // The X.509 encoding names its algorithm, but KeyFactory has to be picked before parsing it
+    private static String keyAlgorithm(byte[] encodedPublic) throws GeneralSecurityException {
+        try {
+            KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(encodedPublic));
+            return "Ed25519";
+        } catch (GeneralSecurityException e) {
+            KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(encodedPublic));
+            return "EC";
+        }
+    }
+
+    // Signature objects are not thread-safe, but one per thread can be re-initialised for each use
+    private static Signature acquireSignature(String algorithm) throws GeneralSecurityException {
+        Signature signature = idleSignatures(algorithm).poll();
+        return signature != null ? signature : Signature.getInstance(algorithm);
+    }
+
+    // The next initSign or initVerify resets it; beyond the pool's capacity it is dropped
+    private static void releaseSignature(String algorithm, Signature signature) {
+        idleSignatures(algorithm).offer(signature);
+    }
+
+    private static BlockingQueue<Signature> idleSignatures(String algorithm) {
+        return SIGNATURES.computeIfAbsent(algorithm, ignored -> new ArrayBlockingQueue<>(SIGNATURE_POOL_SIZE));
+    }
+
+    /**
+     * One signing key; the private half is absent on verify-only nodes and never exposed.
+     */
+    public static final class TokenKey {
+        private final int id;
+        private final String signatureAlgorithm;
+        private final PublicKey publicKey;
+        private final PrivateKey privateKey;
+        private final Instant createdAt;
+
+        TokenKey(int id, String signatureAlgorithm, PublicKey publicKey, PrivateKey privateKey, Instant createdAt) {
+            this.id = id;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.publicKey = publicKey;
+            this.privateKey = privateKey;
+            this.createdAt = createdAt;
+        }
+
+        public int getId() { return id; }
+        public String getSignatureAlgorithm() { return signatureAlgorithm; }
+        public Instant getCreatedAt() { return createdAt; }
+
+        /**
+         * The X.509 SubjectPublicKeyInfo, base64url without padding.
+         */
+        public String getEncodedPublicKey() {
+            return TEXT.encodeToString(publicKey.getEncoded());
+        }
+    }
+}
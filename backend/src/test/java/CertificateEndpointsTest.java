@@ -0,0 +1,158 @@
+import com.sun.net.httpserver.HttpServer;
+import http.EntityTags;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verify and download handlers against a throwaway certificates directory.
+ *
+ * The generator reads its settings once, in its static initializer, so the
+ * directory is configured before any server class is touched.
+ */
+class CertificateEndpointsTest {
+    private static final String LEGACY_PNG = "stored png bytes";
+
+    @TempDir
+    static Path root;
+
+    private static HttpServer server;
+    private static HttpClient client;
+    private static String baseUrl;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        Path certificates = Files.createDirectories(root.resolve("certificates"));
+        System.setProperty("certiai.certificates.dir", certificates.toString());
+        // Without the ID filter every lookup that gets past the handler reaches the disk, as after a false positive
+        System.setProperty("certiai.id.filter.fpp", "0");
+        // A certificate outside the certificates directory, reachable only through a path like ../outside
+        Files.writeString(root.resolve("outside.json"), legacyMetadata("outside"), StandardCharsets.UTF_8);
+        // Issued before tags were stored: the artifact is tagged on its first download
+        Files.writeString(certificates.resolve("legacy-tagged.json"), legacyMetadata("legacy-tagged"),
+                StandardCharsets.UTF_8);
+        Files.writeString(certificates.resolve("legacy-tagged.png"), LEGACY_PNG, StandardCharsets.UTF_8);
+        Files.writeString(certificates.resolve("legacy-revoked.json"), legacyMetadata("legacy-revoked",
+                ",\"revokedAt\":\"2024-06-01T00:00:00Z\""), StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/verify/", new CertiAIServer.CertificateVerificationHandler());
+        server.createContext("/api/download/", new CertiAIServer.CertificateDownloadHandler());
+        server.start();
+        client = HttpClient.newHttpClient();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void verifyRejectsIdsThatEscapeTheCertificatesDirectory() throws Exception {
+        HttpResponse<String> response = get("/api/verify/..%2Foutside", null);
+
+        assertEquals(404, response.statusCode());
+        assertFalse(response.body().contains("Participant outside"));
+    }
+
+    @Test
+    void downloadRejectsIdsThatEscapeTheCertificatesDirectory() throws Exception {
+        HttpResponse<String> response = get("/api/download/..%2Foutside?format=pdf", null);
+
+        assertEquals(404, response.statusCode());
+    }
+
+    @Test
+    void artifactTagIsTheDigestOfTheServedBytes() throws Exception {
+        HttpResponse<String> full = get("/api/download/legacy-tagged?format=png", null);
+
+        assertEquals(200, full.statusCode());
+        assertEquals(LEGACY_PNG, full.body());
+        String etag = full.headers().firstValue("ETag").orElseThrow();
+        assertEquals(EntityTags.of(LEGACY_PNG.getBytes(StandardCharsets.UTF_8)), etag);
+
+        assertEquals(304, get("/api/download/legacy-tagged?format=png", etag).statusCode());
+    }
+
+    @Test
+    void rangeIsOnlyHonouredWhenIfRangeMatchesTheCurrentTag() throws Exception {
+        String etag = EntityTags.of(LEGACY_PNG.getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse<String> resumed = getRange("/api/download/legacy-tagged?format=png", etag);
+        assertEquals(206, resumed.statusCode());
+        assertEquals(LEGACY_PNG.substring(0, 6), resumed.body());
+
+        HttpResponse<String> changed = getRange("/api/download/legacy-tagged?format=png", "\"an-older-file\"");
+        assertEquals(200, changed.statusCode());
+        assertEquals(LEGACY_PNG, changed.body());
+
+        assertEquals(200, getRange("/api/download/legacy-tagged?format=png", EntityTags.weak(etag)).statusCode());
+        assertEquals(200, getRange("/api/download/legacy-tagged?format=png", "Tue, 01 Oct 2024 00:00:00 GMT")
+                .statusCode());
+    }
+
+    @Test
+    void wildcardRevalidationDoesNotConfirmAnUnknownCertificate() throws Exception {
+        assertEquals(404, get("/api/verify/never-issued", "*").statusCode());
+        assertEquals(404, get("/api/download/never-issued?format=pdf", "*").statusCode());
+    }
+
+    @Test
+    void revocationChangesTheRecordTag() throws Exception {
+        // The stored tag predates the revocation; the response must not be confirmed with it
+        String unrevoked = EntityTags.weak(new AdvancedCertificateGenerator.CertificateMetadata("legacy-revoked",
+                "Participant legacy-revoked", "Course", LocalDate.of(2024, 5, 1), "Issuer", LocalDate.of(2024, 5, 2),
+                "https://example.com/verify/legacy-revoked").computeRecordEtag());
+
+        HttpResponse<String> response = get("/api/verify/legacy-revoked", unrevoked);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"valid\":false"));
+        assertNotEquals(unrevoked, response.headers().firstValue("ETag").orElseThrow());
+    }
+
+    static String legacyMetadata(String id) {
+        return legacyMetadata(id, "");
+    }
+
+    static String legacyMetadata(String id, String extraFields) {
+        return "{\"certificateId\":\"" + id + "\",\"participantName\":\"Participant " + id + "\","
+                + "\"courseName\":\"Course\",\"completionDate\":\"2024-05-01\",\"issuerName\":\"Issuer\","
+                + "\"issueDate\":\"2024-05-02\",\"verificationUrl\":\"https://example.com/verify/" + id + "\""
+                + extraFields + "}";
+    }
+
+    static HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    static HttpResponse<String> getRange(String path, String ifRange) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET()
+                .header("Range", "bytes=0-5")
+                .header("If-Range", ifRange)
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,168 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Reopening the store after crashes: a copy of the directory taken while a
+ * store is open is what the disk holds if the process dies at that point.
+ */
+class SegmentStoreRecoveryTest {
+    private static final long SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void keysWithCollidingHashesKeepSeparateLocations() throws IOException {
+        try (OffsetIndex index = OffsetIndex.create(root.resolve("index.dat"), 16)) {
+            OffsetIndex.Location first = new OffsetIndex.Location(1, 0, 100);
+            OffsetIndex.Location second = new OffsetIndex.Location(1, 100, 200);
+
+            assertNull(index.put(42, 1, first));
+            assertNull(index.put(42, 2, second));
+
+            assertEquals(first, index.get(42, 1));
+            assertEquals(second, index.get(42, 2));
+            assertNull(index.get(42, 3));
+            assertEquals(2, index.size());
+        }
+    }
+
+    @Test
+    void indexIsRebuiltAfterAnUncleanShutdown() throws IOException {
+        Path live = root.resolve("live");
+        Path crashed = root.resolve("crashed");
+        try (SegmentStore store = SegmentStore.open(live, SEGMENT_BYTES, null)) {
+            for (int i = 0; i < 50; i++) {
+                store.write(new WriteBatch().put("cert-" + i, RecordType.METADATA, value("v1-" + i)));
+            }
+            for (int i = 0; i < 50; i += 2) {
+                store.write(new WriteBatch().put("cert-" + i, RecordType.METADATA, value("v2-" + i)));
+            }
+            copyDirectory(live, crashed);
+        }
+
+        try (SegmentStore store = SegmentStore.open(crashed, SEGMENT_BYTES, null)) {
+            assertEquals(50, store.recordCount());
+            for (int i = 0; i < 50; i++) {
+                assertArrayEquals(value((i % 2 == 0 ? "v2-" : "v1-") + i), store.get("cert-" + i, RecordType.METADATA));
+            }
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedSoLaterWritesSurviveTheNextRebuild() throws IOException {
+        Path live = root.resolve("live");
+        Path crashed = root.resolve("crashed");
+        try (SegmentStore store = SegmentStore.open(live, SEGMENT_BYTES, null)) {
+            store.write(new WriteBatch().put("cert-a", RecordType.METADATA, value("a")));
+            copyDirectory(live, crashed);
+        }
+        // Half of a record, as left by a crash mid-append
+        byte[] record = new byte[SegmentStore.recordSize(SegmentStore.keyBytes("cert-b"), value("b"))];
+        ByteBuffer encoded = ByteBuffer.wrap(record);
+        SegmentStore.encodeRecord(encoded, RecordType.METADATA, SegmentStore.keyBytes("cert-b"), value("b"));
+        Path segment = lastSegment(crashed);
+        long intact = Files.size(segment);
+        Files.write(segment, Arrays.copyOf(record, record.length / 2), StandardOpenOption.APPEND);
+
+        Path crashedAgain = root.resolve("crashed-again");
+        try (SegmentStore store = SegmentStore.open(crashed, SEGMENT_BYTES, null)) {
+            assertEquals(intact, Files.size(segment));
+            assertArrayEquals(value("a"), store.get("cert-a", RecordType.METADATA));
+            assertNull(store.get("cert-b", RecordType.METADATA));
+
+            store.write(new WriteBatch().put("cert-c", RecordType.METADATA, value("c")));
+            copyDirectory(crashed, crashedAgain);
+        }
+
+        try (SegmentStore store = SegmentStore.open(crashedAgain, SEGMENT_BYTES, null)) {
+            assertArrayEquals(value("a"), store.get("cert-a", RecordType.METADATA));
+            assertArrayEquals(value("c"), store.get("cert-c", RecordType.METADATA));
+        }
+    }
+
+    @Test
+    void compactionInterruptedBeforeDeletingTheSegmentLosesNothing() throws IOException {
+        Path live = root.resolve("live");
+        Path crashed = root.resolve("crashed");
+        try (SegmentStore store = SegmentStore.open(live, SEGMENT_BYTES, null)) {
+            // Fill the first segment, then supersede most of it so it qualifies for compaction
+            for (int i = 0; i < 40; i++) {
+                store.write(new WriteBatch().put("cert-" + i, RecordType.METADATA, value("v1-" + i)));
+            }
+            for (int i = 0; i < 40; i++) {
+                if (i % 8 != 0) {
+                    store.write(new WriteBatch().put("cert-" + i, RecordType.METADATA, value("v2-" + i)));
+                }
+            }
+            Path first = firstSegment(live);
+            byte[] beforeCompaction = Files.readAllBytes(first);
+
+            store.compact();
+
+            // The moved copies are on disk but the crash came before the old segment was deleted
+            copyDirectory(live, crashed);
+            Files.write(crashed.resolve(first.getFileName()), beforeCompaction);
+        }
+
+        try (SegmentStore store = SegmentStore.open(crashed, SEGMENT_BYTES, null)) {
+            assertEquals(40, store.recordCount());
+            for (int i = 0; i < 40; i++) {
+                assertArrayEquals(value((i % 8 == 0 ? "v1-" : "v2-") + i), store.get("cert-" + i, RecordType.METADATA));
+            }
+            store.compact();
+            for (int i = 0; i < 40; i++) {
+                assertArrayEquals(value((i % 8 == 0 ? "v1-" : "v2-") + i), store.get("cert-" + i, RecordType.METADATA));
+            }
+        }
+    }
+
+    private static byte[] value(String text) {
+        // Padded so a few dozen records span several segments
+        return (text + " ".repeat(64)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void copyDirectory(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+            for (Path file : files) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static Path firstSegment(Path directory) throws IOException {
+        return segments(directory)[0];
+    }
+
+    private static Path lastSegment(Path directory) throws IOException {
+        Path[] segments = segments(directory);
+        return segments[segments.length - 1];
+    }
+
+    private static Path[] segments(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.seg")) {
+            List<Path> sorted = new ArrayList<>();
+            files.forEach(sorted::add);
+            sorted.sort(null);
+            return sorted.toArray(new Path[0]);
+        }
+    }
+}
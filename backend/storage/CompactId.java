@@ -0,0 +1,197 @@
+package storage;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * A 128-bit, time-ordered identifier held as two {@code long}s.
+ *
+ * The bit layout is that of a version 7 UUID: 48 bits of Unix milliseconds, the
+ * version, 12 random bits, the variant and 62 random bits. IDs issued close
+ * together therefore sort, and are stored, close together.
+ *
+ * The text form is 22 base-64 digits, most significant first, over an alphabet
+ * of URL-unreserved characters in ASCII order (digits, upper case, {@code _},
+ * lower case, {@code ~}), so comparing the strings compares the IDs; unlike with
+ * the usual URL-safe alphabet, no ID starts with {@code -}. UUID strings issued
+ * before this type existed are not compact IDs; {@link #parse} rejects them and
+ * callers keep treating them as plain string keys.
+ *
+ * Generation draws from a fixed set of {@link SecureRandom} stripes, a block of
+ * bytes at a time, picked by thread ID. Requests run on short-lived virtual
+ * threads, so a per-thread generator would be seeded and discarded with every
+ * request; a stripe is shared, and locked only for the two reads an ID takes.
+ */
+public final class CompactId implements Comparable<CompactId> {
+    public static final int TEXT_LENGTH = 22;
+    public static final int BINARY_LENGTH = 16;
+
+    private static final char[] ALPHABET =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz~".toCharArray();
+    private static final byte[] DIGITS = new byte[128];
+    // A power of two of at least four per core, so threads running at once rarely share one
+    private static final RandomBlock[] STRIPES = new RandomBlock[
+            Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1];
+
+    static {
+        Arrays.setAll(STRIPES, i -> new RandomBlock());
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DIGITS[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private final long high;
+    private final long low;
+
+    public CompactId(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static CompactId generate() {
+        RandomBlock random = STRIPES[(int) Thread.currentThread().getId() & (STRIPES.length - 1)];
+        long first;
+        long second;
+        synchronized (random) {
+            first = random.nextLong();
+            second = random.nextLong();
+        }
+        long high = System.currentTimeMillis() << 16 | 0x7000L | (first & 0x0FFFL);
+        long low = second & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new CompactId(high, low);
+    }
+
+    /**
+     * A new ID in text form.
+     */
+    public static String next() {
+        return generate().toString();
+    }
+
+    /**
+     * Parses the text form, returning {@code null} for anything else, including
+     * legacy UUID strings.
+     */
+    public static CompactId parse(String text) {
+        if (text == null || text.length() != TEXT_LENGTH) {
+            return null;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            char c = text.charAt(i);
+            int digit = c < DIGITS.length ? DIGITS[c] : -1;
+            // 22 digits carry 132 bits; the first may only use the low two
+            if (digit < 0 || i == 0 && digit > 3) {
+                return null;
+            }
+            high = high << 6 | low >>> 58;
+            low = low << 6 | digit;
+        }
+        return new CompactId(high, low);
+    }
+
+    /**
+     * Reads the 16-byte big-endian binary form.
+     */
+    public static CompactId fromBytes(byte[] bytes, int offset) {
+        return new CompactId(readLong(bytes, offset), readLong(bytes, offset + 8));
+    }
+
+    public void writeTo(byte[] bytes, int offset) {
+        writeLong(bytes, offset, high);
+        writeLong(bytes, offset + 8, low);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(high >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        char[] text = new char[TEXT_LENGTH];
+        long h = high;
+        long l = low;
+        for (int i = TEXT_LENGTH - 1; i >= 0; i--) {
+            text[i] = ALPHABET[(int) (l & 63)];
+            l = l >>> 6 | h << 58;
+            h >>>= 6;
+        }
+        return new String(text);
+    }
+
+    @Override
+    public int compareTo(CompactId other) {
+        int order = Long.compareUnsigned(high, other.high);
+        return order != 0 ? order : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CompactId)) {
+            return false;
+        }
+        CompactId id = (CompactId) other;
+        return high == id.high && low == id.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high * 0x9E3779B97F4A7C15L ^ low);
+    }
+
+    static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * A generator and a buffer of its output, so most IDs cost no call into the
+     * provider at all. Guarded by its own monitor.
+     */
+    private static final class RandomBlock {
+        private final SecureRandom random = newSecureRandom();
+        private final byte[] buffer = new byte[512];
+        private int position = buffer.length;
+
+        long nextLong() {
+            if (position + 8 > buffer.length) {
+                random.nextBytes(buffer);
+                position = 0;
+            }
+            long value = readLong(buffer, position);
+            position += 8;
+            return value;
+        }
+
+        // DRBG instances have no shared state; the platform default may funnel every thread through one lock
+        private static SecureRandom newSecureRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind front end for a {@link SegmentStore}.
+ *
+ * Batches submitted by concurrent callers are queued and a single flusher thread
+ * appends everything that arrives within {@code maxDelay} (or until
+ * {@code maxRecords} is reached) as one write followed by one fsync. Each caller
+ * gets a future that completes once its records are durable. Until then the
+ * records are served from memory, so a certificate can be read back as soon as
+ * it has been submitted.
+ *
+ * Futures are completed on a separate callback thread, never on the flusher, so
+ * a slow dependent action cannot hold up durability for other callers. A group
+ * whose write or fsync fails is retried a few times; if it still fails the writer
+ * is marked failed: later {@link #submit}s are rejected and the unflushed records
+ * stay readable from memory, since callers that did not wait for durability were
+ * already told they were stored.
+ */
+public class GroupCommitWriter implements Closeable {
+    private static final Logger logger = Logger.getLogger(GroupCommitWriter.class.getName());
+    // Queued by close(); the flusher must not be interrupted since that closes the store's channels
+    private static final PendingBatch SHUTDOWN = new PendingBatch(new WriteBatch());
+    private static final int COMMIT_ATTEMPTS = 4;
+    private static final long RETRY_BACKOFF_MILLIS = 50;
+
+    private final SegmentStore store;
+    private final int maxRecords;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingBatch> queue;
+    // Submitted but not yet flushed records
+    private final RecordTable dirty = new RecordTable();
+    private final Thread flusher;
+    private final ExecutorService callbacks;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private volatile LongConsumer commitObserver = nanos -> { };
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder committedRecords = new LongAdder();
+    private final LongAdder failedCommits = new LongAdder();
+
+    /**
+     * @param maxRecords  records after which a group is committed without waiting further
+     * @param maxDelayMillis how long the first batch of a group may wait for others to join
+     * @param queueCapacity  submitted batches allowed in flight before {@link #submit} blocks
+     */
+    public GroupCommitWriter(SegmentStore store, int maxRecords, long maxDelayMillis, int queueCapacity) {
+        this.store = store;
+        this.maxRecords = Math.max(1, maxRecords);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.callbacks = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "group-commit-callbacks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = new Thread(this::run, "group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues the batch for the next group commit. Its records are readable through
+     * {@link #get} immediately; the returned future completes when they are on disk.
+     *
+     * @throws IOException if the writer is closed or an earlier commit failed for good
+     */
+    public CompletableFuture<Void> submit(WriteBatch batch) throws IOException {
+        if (closed) {
+            throw new IOException("Group commit writer is closed");
+        }
+        IOException failed = failure;
+        if (failed != null) {
+            throw new IOException("Certificate store is failed; not accepting writes", failed);
+        }
+        PendingBatch pending = new PendingBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            dirty.put(batch.keys.get(i), batch.types.get(i), batch.values.get(i));
+        }
+        try {
+            // Blocks when the flusher falls behind, pushing back on issuance
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            forget(batch);
+            throw new IOException("Interrupted while queueing certificate write", e);
+        }
+        return pending.durable;
+    }
+
+    /**
+     * Returns the latest value for the key and type, whether flushed or not.
+     */
+    public byte[] get(String key, RecordType type) throws IOException {
+        byte[] value = dirty.get(key, type);
+        return value != null ? value : store.get(key, type);
+    }
+
+    /**
+     * Returns the latest values for many keys of one type, taking unflushed values
+     * from memory and reading the rest from the store in one grouped pass.
+     */
+    public Map<String, byte[]> getAll(Collection<String> keys, RecordType type) throws IOException {
+        Map<String, byte[]> values = new HashMap<>();
+        List<String> stored = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            byte[] value = dirty.get(key, type);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                stored.add(key);
+            }
+        }
+        if (!stored.isEmpty()) {
+            values.putAll(store.getAll(stored, type));
+        }
+        return values;
+    }
+
+    /**
+     * Registers a callback receiving the duration, in nanoseconds, of each group
+     * commit (append plus fsync). Called on the flusher thread, so it must be quick.
+     */
+    public void onCommit(LongConsumer observer) {
+        this.commitObserver = observer;
+    }
+
+    /**
+     * Opens the latest value for streaming, from memory if it is not flushed yet.
+     */
+    public ValueRegion openRegion(String key, RecordType type) throws IOException {
+        byte[] value = dirty.get(key, type);
+        return value != null ? ValueRegion.of(value) : store.openRegion(key, type);
+    }
+
+    public boolean contains(String key, RecordType type) {
+        return dirty.get(key, type) != null || store.contains(key, type);
+    }
+
+    public Map<String, Object> getStats() {
+        long commitCount = commits.sum();
+        long recordCount = committedRecords.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("commits", commitCount);
+        stats.put("records", recordCount);
+        stats.put("averageRecordsPerCommit", commitCount == 0 ? 0.0 : (double) recordCount / commitCount);
+        stats.put("failedCommits", failedCommits.sum());
+        stats.put("queuedBatches", queue.size());
+        stats.put("dirtyRecords", dirty.size());
+        stats.put("failed", failure != null);
+        return stats;
+    }
+
+    /**
+     * Stops accepting batches and flushes everything already queued.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(SHUTDOWN);
+            flusher.join();
+            callbacks.shutdown();
+            callbacks.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing pending certificate writes", e);
+        }
+    }
+
+    private void run() {
+        List<PendingBatch> group = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingBatch next = queue.take();
+                int records = 0;
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (next != null) {
+                    if (next == SHUTDOWN) {
+                        stopping = true;
+                        break;
+                    }
+                    group.add(next);
+                    records += next.batch.size();
+                    if (records >= maxRecords) {
+                        break;
+                    }
+                    next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            commit(group);
+            group.clear();
+        }
+    }
+
+    private void commit(List<PendingBatch> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        WriteBatch merged = new WriteBatch();
+        for (PendingBatch pending : group) {
+            merged.keys.addAll(pending.batch.keys);
+            merged.types.addAll(pending.batch.types);
+            merged.values.addAll(pending.batch.values);
+        }
+
+        IOException error = failure;
+        if (error == null) {
+            error = writeWithRetry(merged);
+        }
+
+        List<PendingBatch> completed = new ArrayList<>(group);
+        if (error == null) {
+            for (PendingBatch pending : completed) {
+                forget(pending.batch);
+            }
+            callbacks.execute(() -> completed.forEach(pending -> pending.durable.complete(null)));
+        } else {
+            // Keep the records in memory; they are not on disk and may already have been acknowledged
+            IOException cause = error;
+            callbacks.execute(() -> completed.forEach(pending -> pending.durable.completeExceptionally(cause)));
+        }
+    }
+
+    // Returns null once the group is on disk, or the last error after the final attempt,
+    // in which case the writer is marked failed. If only the fsync failed, the retry
+    // appends a second copy and the first becomes garbage for compaction.
+    private IOException writeWithRetry(WriteBatch merged) {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                store.write(merged);
+                store.sync();
+                commitObserver.accept(System.nanoTime() - start);
+                commits.increment();
+                committedRecords.add(merged.size());
+                return null;
+            } catch (IOException e) {
+                failedCommits.increment();
+                if (attempt == COMMIT_ATTEMPTS) {
+                    failure = e;
+                    logger.log(Level.SEVERE, "Group commit of " + merged.size() + " record(s) failed "
+                            + attempt + " times; rejecting further writes", e);
+                    return e;
+                }
+                logger.log(Level.WARNING, "Group commit of " + merged.size() + " record(s) failed, retrying", e);
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Only drops values that were not replaced by a later submit of the same record
+    private void forget(WriteBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            dirty.remove(batch.keys.get(i), batch.types.get(i), batch.values.get(i));
+        }
+    }
+
+    private static final class PendingBatch {
+        final WriteBatch batch;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingBatch(WriteBatch batch) {
+            this.batch = batch;
+        }
+    }
+}
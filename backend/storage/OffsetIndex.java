@@ -0,0 +1,304 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory-mapped open-addressing hash table from record key fingerprint to
+ * record location.
+ *
+ * Layout: a 64-byte header (magic, capacity, count, clean-shutdown flag) followed
+ * by fixed 32-byte slots of {hash, segment, offset, length, check}. A key is
+ * identified by its 128-bit fingerprint, the 64-bit hash that picks the slot plus
+ * a second, independent 64-bit check; keys whose hashes collide but whose checks
+ * differ get slots of their own further along the probe run. Slots are never
+ * deleted, only overwritten, so linear probing needs no tombstones. The store
+ * still compares the full key against the record header on read.
+ */
+final class OffsetIndex implements Closeable {
+    private static final long MAGIC = 0x4345525449445832L; // "CERTIDX2"; version 1 stored no check
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int CLEAN_OFFSET = 16;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path path;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    private OffsetIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens an existing index. Returns {@code null} if the file is missing, unreadable
+     * or was not closed cleanly, in which case the caller rebuilds it from the segments.
+     */
+    static OffsetIndex openIfClean(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return null;
+        }
+        OffsetIndex index = new OffsetIndex(path);
+        index.map(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        if (index.buffer.getLong(0) != MAGIC || index.buffer.get(CLEAN_OFFSET) != 1
+                || index.channel.size() != HEADER_SIZE + (long) index.capacity * SLOT_SIZE) {
+            index.close();
+            return null;
+        }
+        index.markDirty();
+        return index;
+    }
+
+    static OffsetIndex create(Path path, int capacity) throws IOException {
+        OffsetIndex index = new OffsetIndex(path);
+        index.map(createFile(path, tableSize(capacity)));
+        index.markDirty();
+        return index;
+    }
+
+    Location get(long hash, long check) {
+        lock.readLock().lock();
+        try {
+            int slot = find(hash, check);
+            return slot < 0 ? null : readLocation(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the location for a key fingerprint and returns the one it replaced, if any.
+     */
+    Location put(long hash, long check, Location location) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (count + 1 > capacity * MAX_LOAD) {
+                resize(capacity * 2);
+            }
+            int slot = probe(hash, check);
+            Location previous = null;
+            if (buffer.getLong(slotOffset(slot)) == hash) {
+                previous = readLocation(slot);
+            } else {
+                buffer.putLong(slotOffset(slot), hash);
+                buffer.putLong(slotOffset(slot) + 24, check);
+                count++;
+                buffer.putInt(COUNT_OFFSET, count);
+            }
+            writeLocation(slot, location);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates a location only if it still equals {@code expected}; used by compaction
+     * so it never overwrites a record written after the one it is moving.
+     */
+    boolean replace(long hash, long check, Location expected, Location update) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(hash, check);
+            if (slot < 0 || !readLocation(slot).equals(expected)) {
+                return false;
+            }
+            writeLocation(slot, update);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void forEach(LocationConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                long hash = buffer.getLong(slotOffset(slot));
+                if (hash != 0) {
+                    consumer.accept(hash, readLocation(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the table through to disk. It stays marked dirty, so after a crash it
+     * is still rebuilt from the segments rather than trusted.
+     */
+    void force() {
+        lock.readLock().lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the table and marks it clean, so the next open can trust it.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel == null) {
+                return;
+            }
+            if (buffer.getLong(0) == MAGIC) {
+                buffer.put(CLEAN_OFFSET, (byte) 1);
+                buffer.force();
+            }
+            channel.close();
+            channel = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markDirty() {
+        buffer.put(CLEAN_OFFSET, (byte) 0);
+        buffer.force();
+    }
+
+    private int find(long hash, long check) {
+        int slot = probe(hash, check);
+        return buffer.getLong(slotOffset(slot)) == hash ? slot : -1;
+    }
+
+    // First slot holding this fingerprint or the empty slot where it belongs
+    private int probe(long hash, long check) {
+        int mask = capacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            int offset = slotOffset(slot);
+            long stored = buffer.getLong(offset);
+            if (stored == 0 || stored == hash && buffer.getLong(offset + 24) == check) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private Location readLocation(int slot) {
+        int offset = slotOffset(slot);
+        return new Location(buffer.getInt(offset + 8), buffer.getLong(offset + 12), buffer.getInt(offset + 20));
+    }
+
+    private void writeLocation(int slot, Location location) {
+        int offset = slotOffset(slot);
+        buffer.putInt(offset + 8, location.getSegment());
+        buffer.putLong(offset + 12, location.getOffset());
+        buffer.putInt(offset + 20, location.getLength());
+    }
+
+    private void resize(int newCapacity) throws IOException {
+        Path resized = path.resolveSibling(path.getFileName() + ".resize");
+        OffsetIndex target = new OffsetIndex(resized);
+        target.map(createFile(resized, tableSize(newCapacity)));
+        for (int slot = 0; slot < capacity; slot++) {
+            long hash = buffer.getLong(slotOffset(slot));
+            if (hash != 0) {
+                long check = buffer.getLong(slotOffset(slot) + 24);
+                int targetSlot = target.probe(hash, check);
+                target.buffer.putLong(target.slotOffset(targetSlot), hash);
+                target.buffer.putLong(target.slotOffset(targetSlot) + 24, check);
+                target.writeLocation(targetSlot, readLocation(slot));
+            }
+        }
+        target.count = count;
+        target.buffer.putInt(COUNT_OFFSET, count);
+        target.buffer.force();
+
+        channel.close();
+        Files.move(resized, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = target.channel;
+        this.buffer = target.buffer;
+        this.capacity = target.capacity;
+    }
+
+    private void map(FileChannel fileChannel) throws IOException {
+        this.channel = fileChannel;
+        this.buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileChannel.size());
+        this.capacity = buffer.getInt(CAPACITY_OFFSET);
+        this.count = buffer.getInt(COUNT_OFFSET);
+    }
+
+    private static FileChannel createFile(Path path, long size) throws IOException {
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer header = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        header.putLong(0, MAGIC);
+        header.putInt(CAPACITY_OFFSET, (int) ((size - HEADER_SIZE) / SLOT_SIZE));
+        header.putInt(COUNT_OFFSET, 0);
+        header.force();
+        return fileChannel;
+    }
+
+    private static long tableSize(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        return HEADER_SIZE + (long) slots * SLOT_SIZE;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    @FunctionalInterface
+    interface LocationConsumer {
+        void accept(long hash, Location location);
+    }
+
+    static final class Location {
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int getSegment() { return segment; }
+        long getOffset() { return offset; }
+        int getLength() { return length; }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Location)) {
+                return false;
+            }
+            Location location = (Location) other;
+            return segment == location.segment && offset == location.offset && length == location.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * segment + Long.hashCode(offset)) + length;
+        }
+    }
+}
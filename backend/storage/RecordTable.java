@@ -0,0 +1,218 @@
+package storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Records held in memory, keyed like the {@link OffsetIndex}: by the 64-bit hash
+ * of the encoded key and record type, in open-addressing tables of primitive
+ * longs with linear probing. Lookups neither box the hash nor build a composite
+ * key string.
+ *
+ * Entries keep their encoded key and type, so keys whose hashes collide are
+ * still told apart. The table is split over stripes, each guarded by a
+ * {@link StampedLock}; reads are optimistic and only take the read lock when a
+ * write to the same stripe raced them.
+ */
+final class RecordTable {
+    private static final int STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    RecordTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    void put(String key, RecordType type, byte[] value) {
+        byte[] keyBytes = SegmentStore.keyBytes(key);
+        long hash = SegmentStore.hash(keyBytes, type);
+        stripeFor(hash).put(hash, new Entry(keyBytes, type, value));
+    }
+
+    byte[] get(String key, RecordType type) {
+        byte[] keyBytes = SegmentStore.keyBytes(key);
+        long hash = SegmentStore.hash(keyBytes, type);
+        return stripeFor(hash).get(hash, keyBytes, type);
+    }
+
+    /**
+     * Removes the record only if it still holds this very value, not a later one.
+     */
+    void remove(String key, RecordType type, byte[] value) {
+        byte[] keyBytes = SegmentStore.keyBytes(key);
+        long hash = SegmentStore.hash(keyBytes, type);
+        stripeFor(hash).remove(hash, keyBytes, type, value);
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    // Slots use the low bits of the hash, stripes the high ones
+    private Stripe stripeFor(long hash) {
+        return stripes[(int) (hash >>> 60) & (STRIPES - 1)];
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final RecordType type;
+        final byte[] value;
+
+        Entry(byte[] key, RecordType type, byte[] value) {
+            this.key = key;
+            this.type = type;
+            this.value = value;
+        }
+
+        boolean matches(byte[] key, RecordType type) {
+            return this.type == type && Arrays.equals(this.key, key);
+        }
+    }
+
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        // 0 marks an empty slot; record hashes are never 0
+        private long[] hashes = new long[INITIAL_CAPACITY];
+        private Entry[] entries = new Entry[INITIAL_CAPACITY];
+        private int size;
+
+        byte[] get(long hash, byte[] key, RecordType type) {
+            long stamp = lock.tryOptimisticRead();
+            byte[] value = find(hash, key, type);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = find(hash, key, type);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        // May run unlocked, so it reads each array once and never trusts what it finds until validated
+        private byte[] find(long hash, byte[] key, RecordType type) {
+            long[] hashes = this.hashes;
+            Entry[] entries = this.entries;
+            if (hashes.length != entries.length) {
+                return null; // caught mid-resize
+            }
+            int mask = hashes.length - 1;
+            int slot = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long current = hashes[slot];
+                if (current == 0) {
+                    return null;
+                }
+                if (current == hash) {
+                    Entry entry = entries[slot];
+                    if (entry != null && entry.matches(key, type)) {
+                        return entry.value;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        void put(long hash, Entry entry) {
+            long stamp = lock.writeLock();
+            try {
+                if ((size + 1) * 2 > hashes.length) {
+                    resize(hashes.length * 2);
+                }
+                int mask = hashes.length - 1;
+                int slot = (int) hash & mask;
+                while (hashes[slot] != 0) {
+                    if (hashes[slot] == hash && entries[slot].matches(entry.key, entry.type)) {
+                        entries[slot] = entry;
+                        return;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = hash;
+                entries[slot] = entry;
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long hash, byte[] key, RecordType type, byte[] value) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = hashes.length - 1;
+                int slot = (int) hash & mask;
+                while (hashes[slot] != 0) {
+                    if (hashes[slot] == hash && entries[slot].matches(key, type)) {
+                        if (entries[slot].value == value) {
+                            removeAt(slot);
+                        }
+                        return;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Backward-shift deletion: pulls later entries of the probe run into the hole, so no tombstones
+        private void removeAt(int slot) {
+            int mask = hashes.length - 1;
+            int hole = slot;
+            hashes[hole] = 0;
+            entries[hole] = null;
+            size--;
+            int next = (hole + 1) & mask;
+            while (hashes[next] != 0) {
+                int home = (int) hashes[next] & mask;
+                // The entry may move back only if the hole is not before its home slot
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    hashes[hole] = hashes[next];
+                    entries[hole] = entries[next];
+                    hashes[next] = 0;
+                    entries[next] = null;
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldHashes = hashes;
+            Entry[] oldEntries = entries;
+            long[] newHashes = new long[capacity];
+            Entry[] newEntries = new Entry[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    int slot = (int) oldHashes[i] & mask;
+                    while (newHashes[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newHashes[slot] = oldHashes[i];
+                    newEntries[slot] = oldEntries[i];
+                }
+            }
+            hashes = newHashes;
+            entries = newEntries;
+        }
+    }
+}
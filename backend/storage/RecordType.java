@@ -0,0 +1,40 @@
+package storage;
+
+/**
+ * Kinds of record kept per certificate in the segment store.
+ */
+public enum RecordType {
+    METADATA(1),
+    PDF(2),
+    PNG(3);
+
+    private final byte code;
+
+    RecordType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static RecordType fromCode(byte code) {
+        for (RecordType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown record type: " + code);
+    }
+
+    /**
+     * Maps a download format ("pdf", "png") to its record type.
+     */
+    public static RecordType forFormat(String format) {
+        switch (format.toLowerCase()) {
+            case "pdf": return PDF;
+            case "png": return PNG;
+            default: throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+}
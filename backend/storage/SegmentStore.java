@@ -0,0 +1,730 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only certificate storage engine.
+ *
+ * Metadata and rendered artifacts are appended as CRC-checked records to segment
+ * files that roll over at a size limit, instead of three files per certificate.
+ * A memory-mapped {@link OffsetIndex} maps each (certificate ID, record type) to
+ * the latest record. Records replaced by later writes become garbage, and a
+ * background compactor rewrites the live records of mostly-dead segments and
+ * deletes them.
+ *
+ * Record layout (big-endian):
+ * <pre>
+ * int magic | int totalLength | byte type | short keyLength | int valueLength | key | value | int crc32
+ * </pre>
+ * The CRC covers everything from {@code type} to the end of the value. Keys that
+ * are {@link CompactId}s are stored as a zero byte followed by their 16-byte
+ * binary form, any other key (such as a legacy UUID string) as UTF-8.
+ */
+public class SegmentStore implements Closeable {
+    private static final Logger logger = Logger.getLogger(SegmentStore.class.getName());
+
+    static final int RECORD_MAGIC = 0xCE7A1D05;
+    static final int HEADER_SIZE = 15;
+    static final int TRAILER_SIZE = 4;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_FILE = "index.dat";
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    // Bulk reads fetch neighbouring records together when the gap between them is small
+    private static final int COALESCE_GAP = 16 * 1024;
+    private static final int MAX_COALESCED_READ = 1024 * 1024;
+    // Log positions pack the segment ID above a 40-bit offset
+    private static final int POSITION_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << POSITION_SHIFT) - 1;
+    private static final int KEY_PREFETCH = 64;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    // Readers hold the read lock; only segment deletion takes the write lock
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final ScheduledExecutorService compactor;
+    private final OffsetIndex index;
+    private volatile Segment active;
+
+    private SegmentStore(Path directory, long maxSegmentBytes, Duration compactionInterval) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+
+        for (Path path : listSegmentFiles()) {
+            int id = Integer.parseInt(path.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            segments.put(id, new Segment(id, path));
+        }
+        if (segments.isEmpty()) {
+            segments.put(1, new Segment(1, segmentPath(1)));
+        }
+        this.active = segments.lastEntry().getValue();
+
+        OffsetIndex existing = OffsetIndex.openIfClean(directory.resolve(INDEX_FILE));
+        if (existing != null) {
+            this.index = existing;
+            index.forEach((hash, location) -> segmentFor(location).liveBytes.addAndGet(location.getLength()));
+        } else {
+            this.index = OffsetIndex.create(directory.resolve(INDEX_FILE), 1024);
+            rebuildIndex();
+        }
+
+        if (compactionInterval != null && !compactionInterval.isZero()) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "segment-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = compactionInterval.toMillis();
+            compactor.scheduleWithFixedDelay(this::compactQuietly, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+        logger.info("Opened segment store " + directory.toAbsolutePath() + " with " + segments.size()
+                + " segment(s) and " + index.size() + " record(s)");
+    }
+
+    public static SegmentStore open(Path directory) throws IOException {
+        return open(directory, 128L * 1024 * 1024, Duration.ofMinutes(10));
+    }
+
+    /**
+     * @param compactionInterval delay between background compaction runs, or {@code null}
+     *                           to only compact when {@link #compact()} is called
+     */
+    public static SegmentStore open(Path directory, long maxSegmentBytes, Duration compactionInterval)
+            throws IOException {
+        return new SegmentStore(directory, maxSegmentBytes, compactionInterval);
+    }
+
+    /**
+     * Appends all records of the batch with a single write and indexes them.
+     */
+    public void write(WriteBatch batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        byte[][] keys = new byte[batch.size()][];
+        int totalBytes = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            keys[i] = keyBytes(batch.keys.get(i));
+            totalBytes += recordSize(keys[i], batch.values.get(i));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(totalBytes);
+        int[] offsets = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            offsets[i] = buffer.position();
+            encodeRecord(buffer, batch.types.get(i), keys[i], batch.values.get(i));
+        }
+        buffer.flip();
+
+        synchronized (appendLock) {
+            Segment segment = segmentWithRoom(totalBytes);
+            long base = segment.append(buffer);
+            for (int i = 0; i < batch.size(); i++) {
+                int length = (i + 1 < offsets.length ? offsets[i + 1] : totalBytes) - offsets[i];
+                OffsetIndex.Location previous = index.put(hash(keys[i], batch.types.get(i)),
+                        check(keys[i], batch.types.get(i)), new OffsetIndex.Location(segment.id, base + offsets[i], length));
+                if (previous != null) {
+                    Segment replaced = segments.get(previous.getSegment());
+                    if (replaced != null) {
+                        replaced.liveBytes.addAndGet(-previous.getLength());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the latest value stored for the key and type, or {@code null}.
+     */
+    public byte[] get(String key, RecordType type) throws IOException {
+        byte[] keyBytes = keyBytes(key);
+        segmentLock.readLock().lock();
+        try {
+            OffsetIndex.Location location = index.get(hash(keyBytes, type), check(keyBytes, type));
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer record = segmentFor(location).read(location.getOffset(), location.getLength());
+            return decodeValue(record, keyBytes, type);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the latest values for many keys of one type, keyed by the keys that
+     * have one.
+     *
+     * Index lookups come first; the records are then read in segment and offset
+     * order, and records close to each other in the same segment are fetched with
+     * a single positional read, so a batch of recently issued certificates costs a
+     * few sequential reads instead of one random read per key.
+     */
+    public Map<String, byte[]> getAll(Collection<String> keys, RecordType type) throws IOException {
+        Map<String, byte[]> values = new HashMap<>();
+        segmentLock.readLock().lock();
+        try {
+            List<PendingRead> reads = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                byte[] keyBytes = keyBytes(key);
+                OffsetIndex.Location location = index.get(hash(keyBytes, type), check(keyBytes, type));
+                if (location != null) {
+                    reads.add(new PendingRead(key, keyBytes, location));
+                }
+            }
+            reads.sort(PendingRead.BY_POSITION);
+
+            int first = 0;
+            while (first < reads.size()) {
+                OffsetIndex.Location start = reads.get(first).location;
+                long spanStart = start.getOffset();
+                long spanEnd = spanStart + start.getLength();
+                int last = first + 1;
+                while (last < reads.size()) {
+                    OffsetIndex.Location next = reads.get(last).location;
+                    long nextEnd = next.getOffset() + next.getLength();
+                    if (next.getSegment() != start.getSegment() || next.getOffset() - spanEnd > COALESCE_GAP
+                            || nextEnd - spanStart > MAX_COALESCED_READ) {
+                        break;
+                    }
+                    spanEnd = Math.max(spanEnd, nextEnd);
+                    last++;
+                }
+
+                ByteBuffer span = segmentFor(start).read(spanStart, (int) (spanEnd - spanStart));
+                for (int i = first; i < last; i++) {
+                    PendingRead read = reads.get(i);
+                    int from = (int) (read.location.getOffset() - spanStart);
+                    ByteBuffer record = ByteBuffer.wrap(
+                            Arrays.copyOfRange(span.array(), from, from + read.location.getLength()));
+                    byte[] value = decodeValue(record, read.keyBytes, type);
+                    if (value != null) {
+                        values.put(read.key, value);
+                    }
+                }
+                first = last;
+            }
+            return values;
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the latest value for the key and type for streaming, or returns {@code null}.
+     *
+     * The region reads through its own file channel, so it stays valid even if
+     * compaction deletes the segment while a slow client is still downloading.
+     * Unlike {@link #get}, the CRC is not checked, since that would mean reading
+     * the value through the heap; the record header and key are still verified.
+     */
+    public ValueRegion openRegion(String key, RecordType type) throws IOException {
+        byte[] keyBytes = keyBytes(key);
+        segmentLock.readLock().lock();
+        try {
+            OffsetIndex.Location location = index.get(hash(keyBytes, type), check(keyBytes, type));
+            if (location == null) {
+                return null;
+            }
+            Segment segment = segmentFor(location);
+            ByteBuffer header = segment.read(location.getOffset(), HEADER_SIZE + keyBytes.length);
+            if (header.getInt() != RECORD_MAGIC || header.getInt() != location.getLength()) {
+                throw new IOException("Corrupt record in segment store");
+            }
+            byte storedType = header.get();
+            int keyLength = header.getShort() & 0xFFFF;
+            int valueLength = header.getInt();
+            byte[] storedKey = new byte[keyBytes.length];
+            header.get(storedKey);
+            if (storedType != type.getCode() || keyLength != keyBytes.length || !Arrays.equals(storedKey, keyBytes)) {
+                return null; // fingerprint collision with another key
+            }
+
+            FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ);
+            return ValueRegion.ofChannel(channel, location.getOffset() + HEADER_SIZE + keyLength, valueLength);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The current end of the log. Everything appended afterwards, including
+     * records moved by compaction, lies past it, so state derived from the store
+     * can be brought up to date with {@link #scanKeys}.
+     */
+    public long endPosition() {
+        synchronized (appendLock) {
+            return position(active.id, active.size.get());
+        }
+    }
+
+    /**
+     * Passes the key of every record of the type between {@code from} (an
+     * {@link #endPosition} value, or 0 for the whole log) and the end of the log
+     * to {@code action}, and returns the position the scan stopped at.
+     *
+     * Only record headers and keys are read, not values, so this is cheap even
+     * over segments full of rendered artifacts. Keys of superseded records are
+     * passed too.
+     */
+    public long scanKeys(RecordType type, long from, Consumer<String> action) throws IOException {
+        int fromSegment = (int) (from >>> POSITION_SHIFT);
+        segmentLock.readLock().lock();
+        try {
+            long end = from;
+            for (Segment segment : segments.tailMap(fromSegment, true).values()) {
+                long position = segment.id == fromSegment ? from & OFFSET_MASK : 0;
+                long size = segment.size.get();
+                while (position + HEADER_SIZE + TRAILER_SIZE <= size) {
+                    // Header and, for short keys, the key in one read
+                    ByteBuffer head = segment.read(position, (int) Math.min(size - position, HEADER_SIZE + KEY_PREFETCH));
+                    int length = head.getInt(4);
+                    if (head.getInt(0) != RECORD_MAGIC || length < HEADER_SIZE + TRAILER_SIZE || position + length > size) {
+                        break; // torn tail
+                    }
+                    if (head.get(8) == type.getCode()) {
+                        int keyLength = head.getShort(9) & 0xFFFF;
+                        byte[] key = HEADER_SIZE + keyLength <= head.limit()
+                                ? Arrays.copyOfRange(head.array(), HEADER_SIZE, HEADER_SIZE + keyLength)
+                                : segment.read(position + HEADER_SIZE, keyLength).array();
+                        action.accept(keyString(key));
+                    }
+                    position += length;
+                }
+                end = position(segment.id, position);
+            }
+            return end;
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key, RecordType type) {
+        byte[] keyBytes = keyBytes(key);
+        return index.get(hash(keyBytes, type), check(keyBytes, type)) != null;
+    }
+
+    /**
+     * Forces appended records to disk.
+     */
+    public void sync() throws IOException {
+        active.channel.force(false);
+    }
+
+    /**
+     * Rewrites the live records of sealed segments that are mostly garbage and
+     * deletes those segments. Safe to run concurrently with reads and writes.
+     *
+     * A segment is only deleted once the segments holding its moved records have
+     * been forced to disk. A record is only copied while it is still the latest
+     * version, under the append lock, so the log order stays the version order and
+     * rebuilding the index after a crash (last record wins) never lets a moved
+     * copy shadow a newer write.
+     */
+    public void compact() throws IOException {
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment == active || segment.size.get() == 0
+                    || segment.liveBytes.get() >= segment.size.get() * COMPACTION_THRESHOLD) {
+                continue;
+            }
+
+            long moved = 0;
+            long position = 0;
+            Set<Segment> targets = new HashSet<>();
+            while (position < segment.size.get()) {
+                ScannedRecord record = segment.readRecordAt(position);
+                if (record == null) {
+                    break;
+                }
+                OffsetIndex.Location current = new OffsetIndex.Location(segment.id, position, record.length);
+                Segment target = relocate(hash(record.key, record.type), check(record.key, record.type),
+                        current, record.bytes);
+                if (target != null) {
+                    targets.add(target);
+                    moved++;
+                }
+                position += record.length;
+            }
+
+            // The moved copies must be durable before the only other copy goes away
+            for (Segment target : targets) {
+                target.channel.force(false);
+            }
+            index.force();
+
+            segmentLock.writeLock().lock();
+            try {
+                segments.remove(segment.id);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } finally {
+                segmentLock.writeLock().unlock();
+            }
+            logger.info("Compacted segment " + segment.id + ": moved " + moved + " live record(s)");
+        }
+    }
+
+    /**
+     * Number of indexed records, of all types.
+     */
+    public long recordCount() {
+        return index.size();
+    }
+
+    public Map<String, Object> getStats() {
+        long totalBytes = 0;
+        long liveBytes = 0;
+        for (Segment segment : segments.values()) {
+            totalBytes += segment.size.get();
+            liveBytes += segment.liveBytes.get();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("segments", segments.size());
+        stats.put("records", index.size());
+        stats.put("totalBytes", totalBytes);
+        stats.put("liveBytes", liveBytes);
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        synchronized (appendLock) {
+            for (Segment segment : segments.values()) {
+                segment.channel.force(true);
+                segment.channel.close();
+            }
+            index.close();
+        }
+    }
+
+    // Copies the record to the end of the log if it is still the latest version, and
+    // returns the segment it went to, or null if a newer write superseded it. Writes
+    // also hold appendLock, so none can land between the check and the copy.
+    private Segment relocate(long hash, long check, OffsetIndex.Location from, ByteBuffer record)
+            throws IOException {
+        synchronized (appendLock) {
+            if (!from.equals(index.get(hash, check))) {
+                return null;
+            }
+            Segment segment = segmentWithRoom(record.remaining());
+            int length = record.remaining();
+            long offset = segment.append(record);
+            index.replace(hash, check, from, new OffsetIndex.Location(segment.id, offset, length));
+            return segment;
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Segment compaction failed", e);
+        }
+    }
+
+    // Must hold appendLock
+    private Segment segmentWithRoom(int bytes) throws IOException {
+        Segment segment = active;
+        if (segment.size.get() > 0 && segment.size.get() + bytes > maxSegmentBytes) {
+            segment.channel.force(false);
+            int id = segment.id + 1;
+            segment = new Segment(id, segmentPath(id));
+            segments.put(id, segment);
+            active = segment;
+        }
+        return segment;
+    }
+
+    private void rebuildIndex() throws IOException {
+        logger.info("Rebuilding segment index for " + directory.toAbsolutePath());
+        for (Segment segment : segments.values()) {
+            long position = 0;
+            while (position < segment.size.get()) {
+                ScannedRecord record = segment.readRecordAt(position);
+                if (record == null) {
+                    break;
+                }
+                OffsetIndex.Location previous = index.put(hash(record.key, record.type),
+                        check(record.key, record.type), new OffsetIndex.Location(segment.id, position, record.length));
+                if (previous != null) {
+                    segmentFor(previous).liveBytes.addAndGet(-previous.getLength());
+                }
+                segment.liveBytes.addAndGet(record.length);
+                position += record.length;
+            }
+            if (position < segment.size.get()) {
+                // Torn or corrupt tail, typically from a crash mid-append
+                logger.warning("Truncating segment " + segment.id + " at " + position + " of "
+                        + segment.size.get() + " bytes");
+                segment.channel.truncate(position);
+                segment.size.set(position);
+            }
+        }
+    }
+
+    private static long position(int segment, long offset) {
+        return (long) segment << POSITION_SHIFT | offset;
+    }
+
+    private Segment segmentFor(OffsetIndex.Location location) {
+        Segment segment = segments.get(location.getSegment());
+        if (segment == null) {
+            throw new IllegalStateException("Index points to missing segment " + location.getSegment());
+        }
+        return segment;
+    }
+
+    private List<Path> listSegmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX));
+    }
+
+    static int recordSize(byte[] key, byte[] value) {
+        return HEADER_SIZE + key.length + value.length + TRAILER_SIZE;
+    }
+
+    static void encodeRecord(ByteBuffer buffer, RecordType type, byte[] key, byte[] value) {
+        int start = buffer.position();
+        buffer.putInt(RECORD_MAGIC);
+        buffer.putInt(recordSize(key, value));
+        buffer.put(type.getCode());
+        buffer.putShort((short) key.length);
+        buffer.putInt(value.length);
+        buffer.put(key);
+        buffer.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + 8, buffer.position() - start - 8);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static byte[] decodeValue(ByteBuffer record, byte[] expectedKey, RecordType expectedType) throws IOException {
+        ScannedRecord decoded = ScannedRecord.decode(record);
+        if (decoded == null) {
+            throw new IOException("Corrupt record in segment store");
+        }
+        if (decoded.type != expectedType || !Arrays.equals(decoded.key, expectedKey)) {
+            return null; // fingerprint collision with another key
+        }
+        return decoded.value();
+    }
+
+    static byte[] keyBytes(String key) {
+        CompactId id = CompactId.parse(key);
+        if (id == null) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[1 + CompactId.BINARY_LENGTH];
+        id.writeTo(bytes, 1); // bytes[0] stays 0, which no text key starts with
+        return bytes;
+    }
+
+    static String keyString(byte[] key) {
+        return isCompact(key) ? CompactId.fromBytes(key, 1).toString() : new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isCompact(byte[] key) {
+        return key.length == 1 + CompactId.BINARY_LENGTH && key[0] == 0;
+    }
+
+    // Mixes the two halves of a compact key, or 64-bit FNV-1a over any other key, then the type,
+    // finished with a murmur3 mix; never 0 (the empty slot)
+    static long hash(byte[] key, RecordType type) {
+        long hash;
+        if (isCompact(key)) {
+            hash = CompactId.readLong(key, 1) * 0x9E3779B97F4A7C15L ^ CompactId.readLong(key, 9);
+            hash = (hash ^ type.getCode()) * 0x100000001b3L;
+        } else {
+            hash = 0xcbf29ce484222325L;
+            for (byte b : key) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            hash = (hash ^ type.getCode()) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    // The second half of the index fingerprint, independent of hash(). For a compact key the pair
+    // identifies the key: hash() is a bijection of the mixed halves, which with the second half give
+    // back the first.
+    static long check(byte[] key, RecordType type) {
+        if (isCompact(key)) {
+            return CompactId.readLong(key, 9);
+        }
+        long check = 0x9ae16a3b2f90404fL;
+        for (byte b : key) {
+            check = Long.rotateLeft((check + (b & 0xFF)) * 0x9E3779B97F4A7C15L, 27);
+        }
+        check = (check ^ key.length ^ (long) type.getCode() << 32) * 0xbf58476d1ce4e5b9L;
+        check ^= check >>> 31;
+        check *= 0x94d049bb133111ebL;
+        return check ^ check >>> 29;
+    }
+
+    private static final class PendingRead {
+        static final Comparator<PendingRead> BY_POSITION = Comparator
+                .comparingInt((PendingRead read) -> read.location.getSegment())
+                .thenComparingLong(read -> read.location.getOffset());
+
+        final String key;
+        final byte[] keyBytes;
+        final OffsetIndex.Location location;
+
+        PendingRead(String key, byte[] keyBytes, OffsetIndex.Location location) {
+            this.key = key;
+            this.keyBytes = keyBytes;
+            this.location = location;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicLong size;
+        final AtomicLong liveBytes = new AtomicLong();
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = new AtomicLong(channel.size());
+        }
+
+        // Must hold appendLock
+        long append(ByteBuffer buffer) throws IOException {
+            long position = size.get();
+            int length = buffer.remaining();
+            long written = 0;
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, position + written);
+            }
+            size.addAndGet(length);
+            liveBytes.addAndGet(length);
+            return position;
+        }
+
+        ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Record at " + position + " runs past end of segment " + id);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        // Returns null if no valid record starts at this position
+        ScannedRecord readRecordAt(long position) throws IOException {
+            if (position + HEADER_SIZE + TRAILER_SIZE > size.get()) {
+                return null;
+            }
+            ByteBuffer header = read(position, 8);
+            int magic = header.getInt();
+            int length = header.getInt();
+            if (magic != RECORD_MAGIC || length < HEADER_SIZE + TRAILER_SIZE || position + length > size.get()) {
+                return null;
+            }
+            return ScannedRecord.decode(read(position, length));
+        }
+    }
+
+    private static final class ScannedRecord {
+        final RecordType type;
+        final byte[] key;
+        final int length;
+        final ByteBuffer bytes;
+        private final int valueOffset;
+        private final int valueLength;
+
+        private ScannedRecord(RecordType type, byte[] key, int length, ByteBuffer bytes, int valueOffset, int valueLength) {
+            this.type = type;
+            this.key = key;
+            this.length = length;
+            this.bytes = bytes;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+
+        byte[] value() {
+            return Arrays.copyOfRange(bytes.array(), valueOffset, valueOffset + valueLength);
+        }
+
+        // Validates magic, lengths and CRC; returns null for anything that does not check out
+        static ScannedRecord decode(ByteBuffer record) {
+            try {
+                int length = record.remaining();
+                if (record.getInt(0) != RECORD_MAGIC || record.getInt(4) != length) {
+                    return null;
+                }
+                RecordType type = RecordType.fromCode(record.get(8));
+                int keyLength = record.getShort(9) & 0xFFFF;
+                int valueLength = record.getInt(11);
+                if (HEADER_SIZE + keyLength + valueLength + TRAILER_SIZE != length) {
+                    return null;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record.array(), 8, length - 8 - TRAILER_SIZE);
+                if ((int) crc.getValue() != record.getInt(length - TRAILER_SIZE)) {
+                    return null;
+                }
+                byte[] key = Arrays.copyOfRange(record.array(), HEADER_SIZE, HEADER_SIZE + keyLength);
+                return new ScannedRecord(type, key, length, record.duplicate(), HEADER_SIZE + keyLength, valueLength);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Imports a legacy flat {@code certificates/} directory ({@code <id>.json},
+ * {@code <id>.pdf}, {@code <id>.png}) into a segment store.
+ *
+ * Certificates whose metadata is already in the store are skipped, so the tool
+ * can be re-run. With {@code --delete-source} the imported files are removed
+ * once their batch has been written and synced.
+ *
+ * Usage: java storage.SegmentStoreMigration [sourceDir] [storeDir] [--delete-source]
+ */
+public class SegmentStoreMigration {
+
+    public static void main(String[] args) throws IOException {
+        Path source = Paths.get(args.length > 0 && !args[0].startsWith("--") ? args[0] : "certificates");
+        Path target = Paths.get(args.length > 1 && !args[1].startsWith("--") ? args[1] : "certificates/store");
+        boolean deleteSource = false;
+        for (String arg : args) {
+            deleteSource |= arg.equals("--delete-source");
+        }
+
+        try (SegmentStore store = SegmentStore.open(target, 128L * 1024 * 1024, null)) {
+            Result result = migrate(source, store, deleteSource);
+            System.out.printf("Imported %d certificate(s), skipped %d already present, %d file(s) in total%n",
+                    result.imported, result.skipped, result.files);
+        }
+    }
+
+    public static Result migrate(Path source, SegmentStore store, boolean deleteSource) throws IOException {
+        // Group files by certificate ID; sorted so runs are reproducible
+        Map<String, Map<RecordType, Path>> certificates = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(source, "*.{json,pdf,png}")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                RecordType type = typeForExtension(name.substring(dot + 1));
+                certificates.computeIfAbsent(name.substring(0, dot), id -> new TreeMap<>()).put(type, path);
+            }
+        }
+
+        Result result = new Result();
+        for (Map.Entry<String, Map<RecordType, Path>> certificate : certificates.entrySet()) {
+            String id = certificate.getKey();
+            if (store.contains(id, RecordType.METADATA)) {
+                result.skipped++;
+                continue;
+            }
+
+            WriteBatch batch = new WriteBatch();
+            for (Map.Entry<RecordType, Path> file : certificate.getValue().entrySet()) {
+                batch.put(id, file.getKey(), Files.readAllBytes(file.getValue()));
+            }
+            store.write(batch);
+            result.imported++;
+            result.files += batch.size();
+
+            if (deleteSource) {
+                store.sync();
+                for (Path path : certificate.getValue().values()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        store.sync();
+        return result;
+    }
+
+    private static RecordType typeForExtension(String extension) {
+        return extension.equals("json") ? RecordType.METADATA : RecordType.forFormat(extension);
+    }
+
+    public static class Result {
+        private long imported;
+        private long skipped;
+        private long files;
+
+        public long getImported() { return imported; }
+        public long getSkipped() { return skipped; }
+        public long getFiles() { return files; }
+    }
+}
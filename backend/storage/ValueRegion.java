@@ -0,0 +1,108 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A stored value that can be streamed to a channel without first being copied
+ * into a heap array. File-backed regions transfer straight from the file with
+ * {@link FileChannel#transferTo}; values that are still only in memory (not yet
+ * group-committed, or cached) wrap their existing array.
+ */
+public abstract class ValueRegion implements Closeable {
+
+    public abstract long length();
+
+    /**
+     * Writes {@code count} bytes starting at {@code position} within the value.
+     */
+    public abstract void transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    public static ValueRegion of(byte[] value) {
+        return new ArrayRegion(value);
+    }
+
+    /**
+     * Opens a whole file as a region; the region owns the channel.
+     */
+    public static ValueRegion ofFile(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new FileRegion(channel, 0, channel.size());
+    }
+
+    static ValueRegion ofChannel(FileChannel channel, long offset, long length) {
+        return new FileRegion(channel, offset, length);
+    }
+
+    private static void checkBounds(long position, long count, long length) {
+        if (position < 0 || count < 0 || position + count > length) {
+            throw new IndexOutOfBoundsException("Range " + position + "+" + count + " outside value of " + length);
+        }
+    }
+
+    private static final class ArrayRegion extends ValueRegion {
+        private final byte[] value;
+
+        ArrayRegion(byte[] value) {
+            this.value = value;
+        }
+
+        @Override
+        public long length() {
+            return value.length;
+        }
+
+        @Override
+        public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            checkBounds(position, count, value.length);
+            ByteBuffer buffer = ByteBuffer.wrap(value, (int) position, (int) count);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+    }
+
+    private static final class FileRegion extends ValueRegion {
+        private final FileChannel channel;
+        private final long offset;
+        private final long length;
+
+        FileRegion(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            checkBounds(position, count, length);
+            long transferred = 0;
+            while (transferred < count) {
+                long written = channel.transferTo(offset + position + transferred, count - transferred, target);
+                if (written <= 0) {
+                    throw new IOException("Short transfer at " + (position + transferred) + " of " + length);
+                }
+                transferred += written;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records appended to the store together, in one write.
+ */
+public class WriteBatch {
+    final List<String> keys = new ArrayList<>();
+    final List<RecordType> types = new ArrayList<>();
+    final List<byte[]> values = new ArrayList<>();
+
+    public WriteBatch put(String key, RecordType type, byte[] value) {
+        keys.add(key);
+        types.add(type);
+        values.add(value);
+        return this;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+}